@@ -3,6 +3,7 @@ package com.example.MedSafe.config;
 import com.example.MedSafe.service.CustomUserDetailsService;
 import com.example.MedSafe.service.JwtAuthFilter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -32,6 +33,10 @@ public class SecurityConfig {
     private final JwtAuthFilter jwtAuthFilter;
     private final CustomUserDetailsService userDetailsService;
 
+    // Стоимость BCrypt; при увеличении старые хеши пересчитываются при следующем входе пользователя
+    @Value("${security.password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
 //    @Bean
 //    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
 //        http
@@ -93,7 +98,7 @@ public class SecurityConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     @Bean
@@ -1,20 +1,17 @@
 package com.example.MedSafe.controller;
 
-import com.example.MedSafe.util.RtcTokenBuilder2;
+import com.example.MedSafe.service.AgoraTokenService;
 import com.example.MedSafe.util.RtcTokenBuilder2.Role;
-import org.springframework.beans.factory.annotation.Value;
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/api/agora")
+@RequiredArgsConstructor
 public class AgoraTokenController {
 
-    @Value("${agora.app-id}")
-    private String appId;
-
-    @Value("${agora.app-certificate}")
-    private String appCertificate;
+    private final AgoraTokenService agoraTokenService;
 
     @GetMapping("/token")
     public ResponseEntity<?> generateToken(
@@ -23,20 +20,9 @@ public class AgoraTokenController {
             @RequestParam(defaultValue = "7200") int expireSeconds  // 2 часа по умолчанию
     ) {
         try {
-            // Создаём экземпляр билдера
-            RtcTokenBuilder2 builder = new RtcTokenBuilder2();
-
-            // Самый простой вариант: publisher + одинаковый срок для всех привилегий
-            // (подходит для большинства аудио/видео звонков 1:1 или group)
-            String token = builder.buildTokenWithUid(
-                    appId,
-                    appCertificate,
-                    channelName,
-                    uid,
-                    Role.ROLE_PUBLISHER,          // ← Publisher, чтобы можно было говорить (микрофон)
-                    expireSeconds,                // tokenExpire
-                    expireSeconds                 // privilegeExpire (для join + publish)
-            );
+            // Publisher, чтобы можно было говорить (микрофон); одинаковый срок для всех привилегий.
+            // Повторные запросы того же участника получают закэшированный токен
+            String token = agoraTokenService.getToken(channelName, uid, Role.ROLE_PUBLISHER, expireSeconds);
 
             // Если хочешь роль attendee/subscriber (только слушать) — используй ROLE_SUBSCRIBER
             // String token = builder.buildTokenWithUid(appId, appCertificate, channelName, uid, Role.ROLE_SUBSCRIBER, expireSeconds, expireSeconds);
@@ -51,7 +37,7 @@ public class AgoraTokenController {
             //     0                       // pubDataStreamPrivilegeExpire (обычно 0)
             // );
 
-            TokenResponse response = new TokenResponse(token, uid, channelName, appId);
+            TokenResponse response = new TokenResponse(token, uid, channelName, agoraTokenService.getAppId());
             return ResponseEntity.ok(response);
 
         } catch (Exception e) {
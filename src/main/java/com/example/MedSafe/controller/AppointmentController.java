@@ -3,12 +3,14 @@ package com.example.MedSafe.controller;
 import com.example.MedSafe.model.Appointment;
 import com.example.MedSafe.model.dto.AppointmentRequestDTO;
 import com.example.MedSafe.service.AppointmentService;
+import com.example.MedSafe.service.SlotAvailabilityService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +21,7 @@ import java.util.Map;
 public class AppointmentController {
 
     private final AppointmentService appointmentService;
+    private final SlotAvailabilityService slotAvailabilityService;
 
     // 1. Получить все записи
     @GetMapping
@@ -91,10 +94,15 @@ public class AppointmentController {
 
     // 7. Создать новую запись
     @PostMapping
-    public ResponseEntity<Appointment> createAppointment(@RequestBody AppointmentRequestDTO appointment) {
+    public ResponseEntity<?> createAppointment(@RequestBody AppointmentRequestDTO appointment) {
         try {
             Appointment createdAppointment = appointmentService.create(appointment);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdAppointment);
+        } catch (IllegalStateException e) {
+            // Слот уже занят или календарь врача занят — клиент может выбрать другой слот или повторить
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
@@ -102,12 +110,16 @@ public class AppointmentController {
 
     // 8. Обновить запись полностью
     @PutMapping("/{id}")
-    public ResponseEntity<Appointment> updateAppointment(
+    public ResponseEntity<?> updateAppointment(
             @PathVariable Long id,
             @RequestBody Appointment appointment) {
         try {
             Appointment updatedAppointment = appointmentService.update(id, appointment);
             return ResponseEntity.ok(updatedAppointment);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         } catch (Exception e) {
@@ -117,7 +129,7 @@ public class AppointmentController {
 
     // 9. Обновить статус записи
     @PatchMapping("/{id}/status")
-    public ResponseEntity<Appointment> updateAppointmentStatus(
+    public ResponseEntity<?> updateAppointmentStatus(
             @PathVariable Long id,
             @RequestBody Map<String, String> request) {
         try {
@@ -128,6 +140,9 @@ public class AppointmentController {
 
             Appointment updatedAppointment = appointmentService.updateStatus(id, status);
             return ResponseEntity.ok(updatedAppointment);
+        } catch (IllegalStateException e) {
+            // Запись возвращается из отмены, а её слот уже занят
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         } catch (Exception e) {
@@ -213,10 +228,13 @@ public class AppointmentController {
 
     // 14. Подтвердить запись (специальный endpoint для подтверждения)
     @PostMapping("/{id}/confirm")
-    public ResponseEntity<Appointment> confirmAppointment(@PathVariable Long id) {
+    public ResponseEntity<?> confirmAppointment(@PathVariable Long id) {
         try {
             Appointment confirmedAppointment = appointmentService.updateStatus(id, "CONFIRMED");
             return ResponseEntity.ok(confirmedAppointment);
+        } catch (IllegalStateException e) {
+            // Запись возвращается из отмены, а её слот уже занят
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         } catch (Exception e) {
@@ -226,14 +244,38 @@ public class AppointmentController {
 
     // 15. Отметить запись как завершенную
     @PostMapping("/{id}/complete")
-    public ResponseEntity<Appointment> completeAppointment(@PathVariable Long id) {
+    public ResponseEntity<?> completeAppointment(@PathVariable Long id) {
         try {
             Appointment completedAppointment = appointmentService.updateStatus(id, "COMPLETED");
             return ResponseEntity.ok(completedAppointment);
+        } catch (IllegalStateException e) {
+            // Запись возвращается из отмены, а её слот уже занят
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(null);
         }
     }
-}
\ No newline at end of file
+
+    // 16. Свободные слоты врача или всей специальности за период [from, to) одним запросом
+    @GetMapping("/free-slots")
+    public ResponseEntity<?> getFreeSlots(
+            @RequestParam(required = false) Integer doctorId,
+            @RequestParam(required = false) String specialty,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            if (doctorId != null) {
+                return ResponseEntity.ok(slotAvailabilityService.getFreeSlots(doctorId, from, to));
+            }
+            if (specialty != null && !specialty.isBlank()) {
+                return ResponseEntity.ok(slotAvailabilityService.getFreeSlotsBySpecialty(specialty, from, to));
+            }
+            throw new IllegalArgumentException("doctorId or specialty is required");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+}
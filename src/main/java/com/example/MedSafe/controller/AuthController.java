@@ -1,17 +1,26 @@
 package com.example.MedSafe.controller;
 
+import com.example.MedSafe.model.CustomUserDetails;
 import com.example.MedSafe.model.User;
 import com.example.MedSafe.model.dto.AuthResponse;
 import com.example.MedSafe.service.AuditService;
 import com.example.MedSafe.service.AuthService;
 import com.example.MedSafe.service.JwtUtil;
+import com.example.MedSafe.service.KeyLoginChallengeService;
+import com.example.MedSafe.service.LoginRateLimiter;
+import com.example.MedSafe.service.RefreshTokenService;
+import com.example.MedSafe.service.UserService;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
@@ -26,6 +35,10 @@ public class AuthController {
     private final AuthService authService;
     private final AuditService auditService;
     private final JwtUtil jwtUtil;
+    private final RefreshTokenService refreshTokenService;
+    private final UserService userService;
+    private final LoginRateLimiter loginRateLimiter;
+    private final KeyLoginChallengeService keyLoginChallengeService;
 
     @PostMapping("/register")
     public ResponseEntity<?> register(@RequestBody RegisterRequest request, HttpServletRequest httpRequest) {
@@ -90,14 +103,17 @@ public class AuthController {
 
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody LoginRequest request, HttpServletRequest httpRequest) {
+        long retryAfter = loginRateLimiter.acquireForUsername(request.getUsername());
+        if (retryAfter > 0) {
+            return tooManyAttempts(retryAfter);
+        }
         try {
             User user = authService.loginUser(request.getUsername(), request.getPassword());
 
             auditService.log(
                     user, "LOGIN", "users", user.getUserId(), httpRequest.getRemoteAddr());
 
-            String token = jwtUtil.generateToken(user.getUsername());
-            AuthResponse authResponse = new AuthResponse(user.getUserId(), user.getUsername(), token, user.getRoles());
+            AuthResponse authResponse = issueTokens(user, refreshTokenService.issue(user.getUserId()));
 
             return ResponseEntity.ok(authResponse);
 
@@ -109,16 +125,66 @@ public class AuthController {
         }
     }
 
+    /**
+     * Вход по ключу, шаг 1: выдаёт одноразовый challenge для подписи
+     */
+    @PostMapping("/login/key/challenge")
+    public ResponseEntity<?> issueKeyChallenge(@RequestBody KeyChallengeRequest request) {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("challenge", authService.issueKeyLoginChallenge(request.getUsername()));
+            response.put("expiresIn", keyLoginChallengeService.getTtlSeconds());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+
+    /**
+     * Вход по ключу, шаг 2: подпись challenge (SHA256withRSA, Base64) проверяется публичным ключом
+     */
+    @PostMapping("/login/key/verify")
+    public ResponseEntity<?> verifyKeyChallenge(@RequestBody KeySignatureRequest request, HttpServletRequest httpRequest) {
+        long retryAfter = loginRateLimiter.acquireForUsername(request.getUsername());
+        if (retryAfter > 0) {
+            return tooManyAttempts(retryAfter);
+        }
+        try {
+            User user = authService.loginWithSignature(
+                    request.getUsername(), request.getChallenge(), request.getSignature());
+
+            auditService.log(
+                    user, "LOGIN_WITH_KEY", "users", user.getUserId(), httpRequest.getRemoteAddr());
+
+            return ResponseEntity.ok(issueTokens(user, refreshTokenService.issue(user.getUserId())));
+        } catch (Exception e) {
+            logger.error("Ошибка при входе по подписи: {}", e.getMessage());
+            auditService.log(
+                    null, "FAILED_LOGIN_WITH_KEY", "users", null, httpRequest.getRemoteAddr());
+
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Не удалось аутентифицироваться по подписи: " + e.getMessage());
+            return ResponseEntity.status(401).body(errorResponse);
+        }
+    }
+
+    // Устаревший вход с передачей приватного ключа — используйте /login/key/challenge + /login/key/verify
+    @Deprecated
     @PostMapping("/login/key")
     public ResponseEntity<?> loginWithPrivateKey(@RequestBody LoginKeyRequest request, HttpServletRequest httpRequest) {
+        long retryAfter = loginRateLimiter.acquireForUsername(request.getUsername());
+        if (retryAfter > 0) {
+            return tooManyAttempts(retryAfter);
+        }
         try {
             User user = authService.loginWithPrivateKey(request.getUsername(), request.getPrivateKey());
 
             auditService.log(
                     user, "LOGIN_WITH_KEY", "users", user.getUserId(), httpRequest.getRemoteAddr());
 
-            String token = jwtUtil.generateToken(user.getUsername());
-            AuthResponse authResponse = new AuthResponse(user.getUserId(), user.getUsername(), token, user.getRoles());
+            AuthResponse authResponse = issueTokens(user, refreshTokenService.issue(user.getUserId()));
 
             return ResponseEntity.ok(authResponse);
 
@@ -133,6 +199,59 @@ public class AuthController {
         }
     }
 
+    /**
+     * Обмен refresh-токена на новую пару токенов. Старый refresh-токен после этого недействителен
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody RefreshRequest request) {
+        try {
+            RefreshTokenService.IssuedToken issued = refreshTokenService.rotate(request.getRefreshToken());
+            User user = userService.findById(issued.getUserId());
+            return ResponseEntity.ok(issueTokens(user, issued.getToken()));
+        } catch (Exception e) {
+            logger.warn("Ошибка при обновлении токена: {}", e.getMessage());
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(401).body(errorResponse);
+        }
+    }
+
+    /**
+     * Выход: access-токен попадает в список отозванных до конца срока, цепочка refresh-токенов отзывается
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authHeader,
+                                    @RequestBody(required = false) RefreshRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof CustomUserDetails userDetails) {
+            authService.logoutUser(userDetails.getUser().getUserId());
+        }
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            jwtUtil.revokeToken(authHeader.substring(7));
+        }
+        if (request != null && request.getRefreshToken() != null) {
+            refreshTokenService.revoke(request.getRefreshToken());
+        }
+
+        Map<String, String> response = new HashMap<>();
+        response.put("message", "Logged out");
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<?> tooManyAttempts(long retryAfterSeconds) {
+        Map<String, String> errorResponse = new HashMap<>();
+        errorResponse.put("error", "Too many login attempts, try again later");
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(errorResponse);
+    }
+
+    private AuthResponse issueTokens(User user, String refreshToken) {
+        String token = jwtUtil.generateToken(user.getUsername());
+        return new AuthResponse(user.getUserId(), user.getUsername(), token, user.getRoles(),
+                refreshToken, jwtUtil.getExpirationMs() / 1000);
+    }
+
     @Getter
     @Setter
     public static class RegisterRequest {
@@ -167,4 +286,24 @@ public class AuthController {
         private String username;
         private String privateKey;
     }
-}
\ No newline at end of file
+
+    @Getter
+    @Setter
+    public static class KeyChallengeRequest {
+        private String username;
+    }
+
+    @Getter
+    @Setter
+    public static class KeySignatureRequest {
+        private String username;
+        private String challenge;
+        private String signature;
+    }
+
+    @Getter
+    @Setter
+    public static class RefreshRequest {
+        private String refreshToken;
+    }
+}
@@ -53,18 +53,17 @@ public class CallController {
         // Проверяем активные звонки пользователя
         CallRequest activeCall = callService.getActiveCallForUser(userId);
         if (activeCall != null) {
-            // Помечаем звонок как пропущенный
-            CallNotification missedCall = callService.markCallAsMissed(activeCall.getCallId());
-
-            // Уведомляем другую сторону
             String targetId = activeCall.getCallerId().equals(userId) ?
                     activeCall.getTargetId() : activeCall.getCallerId();
 
-            messagingTemplate.convertAndSendToUser(
-                    targetId,
-                    "/queue/call",
-                    missedCall
-            );
+            // Звонок ещё звонил — пропущенный, уже идёт разговор — завершаем
+            CallNotification missedCall = callService.markCallAsMissed(activeCall.getCallId());
+            if (missedCall != null) {
+                messagingTemplate.convertAndSendToUser(targetId, "/queue/call", missedCall);
+            } else {
+                CallResponse response = callService.endCall(activeCall.getCallId(), userId);
+                messagingTemplate.convertAndSendToUser(targetId, "/queue/call-response", response);
+            }
         }
     }
 
@@ -76,7 +75,25 @@ public class CallController {
         log.info("InitiateCall получен от {} к {}",
                 callRequest.getCallerId(), callRequest.getTargetId());
 
-        CallNotification notification = callService.initiateCall(callRequest);
+        CallNotification notification;
+        try {
+            notification = callService.initiateCall(callRequest);
+        } catch (IllegalStateException e) {
+            // Кто-то из участников уже в звонке
+            log.info("Звонок от {} к {} не начат: {}", callRequest.getCallerId(),
+                    callRequest.getTargetId(), e.getMessage());
+            messagingTemplate.convertAndSendToUser(
+                    callRequest.getCallerId(),
+                    "/queue/call-response",
+                    CallResponse.builder()
+                            .callId(callRequest.getCallId())
+                            .status("busy")
+                            .reason(e.getMessage())
+                            .timestamp(System.currentTimeMillis())
+                            .build()
+            );
+            return;
+        }
 
         String targetUserId = callRequest.getTargetId(); // это строка "2"
 
@@ -132,14 +149,11 @@ public class CallController {
         CallResponse response = callService.rejectCall(callId, reason);
 
         // Отправляем также звонящему
-        CallRequest callRequest = callService.getActiveCallForUser(response.getPatientId());
-        if (callRequest != null) {
-            messagingTemplate.convertAndSendToUser(
-                    callRequest.getCallerId(),
-                    "/queue/call-response",
-                    response
-            );
-        }
+        messagingTemplate.convertAndSendToUser(
+                response.getPatientId(),
+                "/queue/call-response",
+                response
+        );
 
         return response;
     }
@@ -157,11 +171,10 @@ public class CallController {
 
         CallResponse response = callService.endCall(callId, endedById);
 
-        // Отправляем другому участнику
-        CallRequest callRequest = callService.getActiveCallForUser(endedById);
-        if (callRequest != null) {
-            String otherUserId = callRequest.getCallerId().equals(endedById) ?
-                    callRequest.getTargetId() : callRequest.getCallerId();
+        // Отправляем другому участнику (если звонок ещё не был завершен)
+        if (response.getPatientId() != null) {
+            String otherUserId = response.getPatientId().equals(endedById) ?
+                    response.getDoctorId() : response.getPatientId();
 
             messagingTemplate.convertAndSendToUser(
                     otherUserId,
@@ -239,6 +252,9 @@ public class CallController {
 
         log.info("Получен ping от user {} | клиентское время: {} | задержка: {} мс", userId, clientTime, delay);
 
+        // Ping продлевает онлайн-статус
+        callService.heartbeat(userId);
+
         Map<String, Object> response = Map.of(
                 "type", "pong",
                 "timestamp", serverTime,
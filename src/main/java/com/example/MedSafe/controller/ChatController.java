@@ -13,6 +13,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/v1/chats")
@@ -30,6 +31,13 @@ public class ChatController {
         return ResponseEntity.ok(chats);
     }
 
+    @GetMapping("/unread-count")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Map<String, Long>> getTotalUnreadCount() {
+        Integer userId = getCurrentUserId();
+        return ResponseEntity.ok(Map.of("total", chatService.getTotalUnreadCount(userId)));
+    }
+
     @PostMapping
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<ChatResponse> createChat(@RequestBody CreateChatRequest request) {
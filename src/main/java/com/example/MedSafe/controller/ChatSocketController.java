@@ -0,0 +1,95 @@
+package com.example.MedSafe.controller;
+
+import com.example.MedSafe.dto.MessageResponse;
+import com.example.MedSafe.model.ChatParticipant;
+import com.example.MedSafe.model.dto.ChatEvent;
+import com.example.MedSafe.service.ChatNotificationService;
+import com.example.MedSafe.service.ChatService;
+import com.example.MedSafe.service.MessageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * STOMP-обработчики чата: печатает, прочитано, догрузка пропущенных сообщений после переподключения.
+ * Новые сообщения приходят клиенту в /user/queue/messages
+ */
+@Controller
+@RequiredArgsConstructor
+@Slf4j
+public class ChatSocketController {
+
+    private static final int RESUME_LIMIT = 100;
+
+    private final ChatService chatService;
+    private final MessageService messageService;
+    private final ChatNotificationService chatNotificationService;
+
+    /**
+     * Индикатор набора текста: {"chatId": 1, "typing": true}
+     */
+    @MessageMapping("/chat.typing")
+    public void handleTyping(@Payload Map<String, Object> request, Principal principal) {
+        Long chatId = toLong(request.get("chatId"));
+        boolean typing = !Boolean.FALSE.equals(request.get("typing"));
+
+        ChatParticipant participant = requireParticipant(chatId, principal);
+        chatNotificationService.notifyTyping(chatId, participant.getUser().getUserId(), typing);
+    }
+
+    /**
+     * Отметка о прочтении: {"chatId": 1}
+     */
+    @MessageMapping("/chat.read")
+    public void handleRead(@Payload Map<String, Object> request, Principal principal) {
+        Long chatId = toLong(request.get("chatId"));
+
+        ChatParticipant participant = requireParticipant(chatId, principal);
+        chatService.markAsRead(chatId, participant.getUser().getUserId());
+    }
+
+    /**
+     * Рукопожатие после (пере)подключения: {"chatId": 1, "lastMessageId": 42}.
+     * Возвращает сообщения новее lastMessageId (или последние, если id не передан)
+     */
+    @MessageMapping("/chat.resume")
+    @SendToUser("/queue/messages-resume")
+    public ChatEvent handleResume(@Payload Map<String, Object> request, Principal principal) {
+        Long chatId = toLong(request.get("chatId"));
+        Long lastMessageId = request.get("lastMessageId") != null ? toLong(request.get("lastMessageId")) : null;
+
+        requireParticipant(chatId, principal);
+        List<MessageResponse> missed = messageService.getChatMessages(
+                chatId, RESUME_LIMIT, 0, null, lastMessageId);
+
+        log.debug("Resume for chat {} after {}: {} messages", chatId, lastMessageId, missed.size());
+
+        return ChatEvent.builder()
+                .type("resume")
+                .chatId(chatId)
+                .messages(missed)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+
+    private ChatParticipant requireParticipant(Long chatId, Principal principal) {
+        if (principal == null) {
+            throw new IllegalStateException("STOMP session is not authenticated");
+        }
+        return chatService.getParticipant(chatId, principal.getName());
+    }
+
+    private Long toLong(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("chatId is required");
+        }
+        return value instanceof Number number ? number.longValue() : Long.valueOf(value.toString());
+    }
+}
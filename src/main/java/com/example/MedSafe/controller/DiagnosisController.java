@@ -8,10 +8,14 @@ import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import java.io.IOException;
+import java.security.PrivateKey;
 import java.util.List;
 
 @RestController
@@ -19,6 +23,9 @@ import java.util.List;
 @RequiredArgsConstructor
 public class DiagnosisController {
     private static final Logger logger = LoggerFactory.getLogger(DiagnosisController.class);
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long BATCH_TIMEOUT_MILLIS = 60_000;
+
     private final DiagnosisService diagnosisService;
 
     @PostMapping("/create")
@@ -77,6 +84,52 @@ public class DiagnosisController {
         }
     }
 
+    /**
+     * Пакетная расшифровка: ключ передаётся один раз, ответ — NDJSON, по строке на диагноз по мере готовности
+     */
+    @PostMapping(value = "/decrypt/batch", produces = "application/x-ndjson")
+    public ResponseEntity<ResponseBodyEmitter> decryptDiagnoses(@RequestBody BatchDecryptRequest request) {
+        List<Integer> diagnosisIds = request.getDiagnosisIds();
+        logger.info("Получен запрос на пакетную расшифровку: count={}", diagnosisIds != null ? diagnosisIds.size() : 0);
+
+        if (diagnosisIds == null || diagnosisIds.isEmpty() || diagnosisIds.size() > MAX_BATCH_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        PrivateKey privateKey;
+        try {
+            privateKey = diagnosisService.parsePrivateKey(request.getPrivateKey());
+        } catch (Exception e) {
+            logger.error("Некорректный приватный ключ: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(BATCH_TIMEOUT_MILLIS);
+        diagnosisService.decryptDiagnoses(diagnosisIds, privateKey, result -> {
+            // Результаты приходят из разных потоков, строка пишется целиком
+            synchronized (emitter) {
+                try {
+                    emitter.send(result, MediaType.APPLICATION_JSON);
+                    emitter.send("\n", MediaType.TEXT_PLAIN);
+                } catch (IOException e) {
+                    // Клиент закрыл соединение — остальные строки просто не дойдут
+                    logger.debug("Не удалось отправить результат расшифровки: {}", e.getMessage());
+                }
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                logger.error("Ошибка при пакетной расшифровке: {}", error.getMessage(), error);
+                emitter.completeWithError(error);
+            } else {
+                emitter.complete();
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(emitter);
+    }
+
     @GetMapping("/recent")
     public ResponseEntity<?> getRecentDiagnoses() {
         logger.info("Получен запрос на получение последних диагнозов");
@@ -99,6 +152,16 @@ public class DiagnosisController {
         return ResponseEntity.ok(diagnoses);
     }
 
+    /**
+     * Шифротекст в бинарном виде ([версия][id ключа][IV][данные]), без Base64.
+     * В JSON-ответах поле diagnosis по-прежнему приходит строкой Base64
+     */
+    @GetMapping(value = "/{diagnosisId}/ciphertext", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getCiphertext(@PathVariable Integer diagnosisId) {
+        logger.info("Получен запрос на получение шифротекста diagnosisId={}", diagnosisId);
+        return ResponseEntity.ok(diagnosisService.getCiphertext(diagnosisId));
+    }
+
     @GetMapping("/{patientId}/patient")
     public ResponseEntity<List<Diagnosis>> getDiagnosesByPatientId(@PathVariable Integer patientId) {
         logger.info("Получен запрос на получение диагнозов для patientId={}", patientId);
@@ -122,4 +185,11 @@ public class DiagnosisController {
         private String encryptedDiagnosis;
         private String privateKey;
     }
+
+    @Getter
+    @Setter
+    public static class BatchDecryptRequest {
+        private List<Integer> diagnosisIds;
+        private String privateKey;
+    }
 }
\ No newline at end of file
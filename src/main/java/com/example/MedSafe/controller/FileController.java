@@ -44,24 +44,32 @@
 //}
 package com.example.MedSafe.controller;
 
+import com.example.MedSafe.service.FileStorageService;
+import com.example.MedSafe.service.ThumbnailService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/v1/files")
@@ -70,94 +78,193 @@ import java.nio.file.Paths;
 @Tag(name = "File Management", description = "API для скачивания файлов")
 public class FileController {
 
-    @Value("${file.upload-dir:uploads}")
-    private String uploadDir;
+    // Атрибуты Tomcat для отдачи файла через sendfile (без копирования в JVM)
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+    // Маленькие файлы дешевле отдать обычной записью
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private final FileStorageService fileStorageService;
+    private final ThumbnailService thumbnailService;
+
+    @Operation(summary = "Скачать файл из content-addressed хранилища")
+    @GetMapping("/blobs/{filename:.+}")
+    public ResponseEntity<Resource> downloadBlob(@PathVariable String filename,
+                                                 @RequestParam(required = false) String size,
+                                                 HttpServletRequest request, WebRequest webRequest) {
+        // Имя файла: sha256 + исходное расширение, расширение нужно только для типа контента
+        String sha256 = FileStorageService.stripExtension(filename);
+        if (!FileStorageService.isSha256(sha256)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        }
+        return serveFile(FileStorageService.BLOBS_SUBDIRECTORY, filename, "attachment", size, request, webRequest);
+    }
 
     @Operation(summary = "Скачать документ")
     @GetMapping("/documents/{filename:.+}")
-    public ResponseEntity<Resource> downloadDocument(@PathVariable String filename) {
-        return downloadFile(filename, "documents");
+    public ResponseEntity<Resource> downloadDocument(@PathVariable String filename,
+                                                     @RequestParam(required = false) String size,
+                                                     HttpServletRequest request, WebRequest webRequest) {
+        return serveFile("documents", filename, "attachment", size, request, webRequest);
     }
 
-    @Operation(summary = "Скачать документ")
+    @Operation(summary = "Скачать вложение сообщения")
     @GetMapping("/messages/{filename:.+}")
-    public ResponseEntity<Resource> downloadMessages(@PathVariable String filename) {
-        return downloadFile(filename, "documents");
+    public ResponseEntity<Resource> downloadMessages(@PathVariable String filename,
+                                                     @RequestParam(required = false) String size,
+                                                     HttpServletRequest request, WebRequest webRequest) {
+        return serveFile("messages", filename, "attachment", size, request, webRequest);
     }
 
     @Operation(summary = "Скачать изображение")
     @GetMapping("/images/{filename:.+}")
-    public ResponseEntity<Resource> downloadImage(@PathVariable String filename) {
-        return downloadFile(filename, "images");
+    public ResponseEntity<Resource> downloadImage(@PathVariable String filename,
+                                                  @RequestParam(required = false) String size,
+                                                  HttpServletRequest request, WebRequest webRequest) {
+        return serveFile("images", filename, "attachment", size, request, webRequest);
     }
 
-    private ResponseEntity<Resource> downloadFile(String filename, String subdirectory) {
+    @Operation(summary = "Просмотр изображения (inline)")
+    @GetMapping("/images/view/{filename:.+}")
+    public ResponseEntity<Resource> viewImage(@PathVariable String filename,
+                                              @RequestParam(required = false) String size,
+                                              HttpServletRequest request, WebRequest webRequest) {
+        return serveFile("images", filename, "inline", size, request, webRequest);
+    }
+
+    /**
+     * Отдаёт файл с поддержкой условных запросов (ETag/Last-Modified -> 304) и Range (206).
+     * Полный файл отдаётся через sendfile, если контейнер его поддерживает.
+     * size=thumb|preview — уменьшенная копия изображения
+     */
+    private ResponseEntity<Resource> serveFile(String subdirectory, String filename, String disposition,
+                                               String size, HttpServletRequest request, WebRequest webRequest) {
         try {
-            Path filePath = Paths.get(uploadDir).resolve(subdirectory).resolve(filename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
+            if (size != null && !ThumbnailService.isSupportedSize(size)) {
+                return ResponseEntity.badRequest().build();
+            }
 
-            if (!resource.exists() || !resource.isReadable()) {
+            Path filePath = fileStorageService.resolveStoredPath(subdirectory, filename);
+            if (!Files.isRegularFile(filePath) || !Files.isReadable(filePath)) {
                 log.error("Файл не найден или не читается: {}", filePath);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
             }
 
-            // Определяем тип контента
-            String contentType = null;
-            try {
-                contentType = Files.probeContentType(filePath);
-            } catch (IOException ex) {
-                log.warn("Не удалось определить тип контента для файла: {}", filename);
-            }
+            long length = Files.size(filePath);
+            long lastModified = Files.getLastModifiedTime(filePath).toMillis();
+            boolean immutable = FileStorageService.BLOBS_SUBDIRECTORY.equals(subdirectory);
+            // Содержимое blob-файла не меняется, его хеш — готовый ETag
+            String etag = immutable
+                    ? "\"" + FileStorageService.stripExtension(filename) + "\""
+                    : "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+            MediaType contentType = fileStorageService.resolveContentType(subdirectory, filename);
+            byte[] rendered = null;
+            String originalEtag = etag;
+            boolean renderOnDemand = false;
 
-            if (contentType == null) {
-                contentType = "application/octet-stream";
+            if (size != null && ThumbnailService.isImage(contentType.toString())) {
+                // Превью зависит только от оригинала, поэтому ETag строится от него
+                etag = etag.substring(0, etag.length() - 1) + "-" + size + "\"";
+                Path variantPath = ThumbnailService.variantPath(filePath, size);
+                if (Files.isRegularFile(variantPath)) {
+                    filePath = variantPath;
+                    length = Files.size(variantPath);
+                    contentType = MediaType.parseMediaType(ThumbnailService.CONTENT_TYPE);
+                } else {
+                    // Фоновая генерация ещё не успела — сделаем на лету, но только если ответ будет с телом
+                    renderOnDemand = true;
+                }
             }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
+            // Заголовки ETag и Last-Modified выставляет checkNotModified
+            if (webRequest.checkNotModified(etag, lastModified)) {
+                return null;
+            }
 
-        } catch (MalformedURLException e) {
-            log.error("Ошибка при загрузке файла: {}", filename, e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
-        }
-    }
+            if (renderOnDemand) {
+                rendered = thumbnailService.render(filePath, size);
+                if (rendered != null) {
+                    length = rendered.length;
+                    contentType = MediaType.parseMediaType(ThumbnailService.CONTENT_TYPE);
+                } else {
+                    // Превью не получилось — отдаём оригинал под его собственным ETag
+                    etag = originalEtag;
+                    HttpServletResponse response = webRequest instanceof NativeWebRequest nativeRequest
+                            ? nativeRequest.getNativeResponse(HttpServletResponse.class)
+                            : null;
+                    if (response != null) {
+                        response.setHeader(HttpHeaders.ETAG, etag);
+                    }
+                }
+            }
 
-    @Operation(summary = "Просмотр изображения (inline)")
-    @GetMapping("/images/view/{filename:.+}")
-    public ResponseEntity<Resource> viewImage(@PathVariable String filename) {
-        try {
-            Path filePath = Paths.get(uploadDir).resolve("images").resolve(filename).normalize();
-            Resource resource = new UrlResource(filePath.toUri());
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(contentType);
+            headers.set(HttpHeaders.CONTENT_DISPOSITION, disposition + "; filename=\"" + filename + "\"");
+            headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            headers.setCacheControl(immutable
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable()
+                    : CacheControl.noCache().cachePrivate());
 
-            if (!resource.exists() || !resource.isReadable()) {
-                log.error("Изображение не найдено: {}", filePath);
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            if (rendered != null) {
+                return ResponseEntity.ok().headers(headers).body(new ByteArrayResource(rendered));
             }
 
-            String contentType = null;
-            try {
-                contentType = Files.probeContentType(filePath);
-            } catch (IOException ex) {
-                log.warn("Не удалось определить тип контента для изображения: {}", filename);
+            String range = request.getHeader(HttpHeaders.RANGE);
+            if (range != null && !isIfRangeSatisfied(request, etag, lastModified)) {
+                // Файл изменился с момента первой части — отдаём целиком
+                range = null;
             }
 
-            if (contentType == null) {
-                contentType = "image/jpeg";
+            if (range == null) {
+                if (canUseSendfile(request, length)) {
+                    request.setAttribute(SENDFILE_FILENAME_ATTR, filePath.toAbsolutePath().toString());
+                    request.setAttribute(SENDFILE_START_ATTR, 0L);
+                    request.setAttribute(SENDFILE_END_ATTR, length);
+                    return ResponseEntity.ok().headers(headers).contentLength(length).build();
+                }
+                if (request.getHeader(HttpHeaders.RANGE) != null) {
+                    // InputStreamResource Spring не режет по Range
+                    return ResponseEntity.ok().headers(headers).contentLength(length)
+                            .body(new InputStreamResource(Files.newInputStream(filePath)));
+                }
             }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
+            // Range для Resource Spring обрабатывает сам: 206 и нужные куски файла
+            return ResponseEntity.ok().headers(headers).body(new FileSystemResource(filePath));
 
-        } catch (MalformedURLException e) {
-            log.error("Ошибка при просмотре изображения: {}", filename, e);
+        } catch (IllegalArgumentException e) {
+            log.warn("Недопустимое имя файла: {}", filename);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        } catch (IOException e) {
+            log.error("Ошибка при загрузке файла: {}", filename, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
+    private boolean isIfRangeSatisfied(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            return request.getDateHeader(HttpHeaders.IF_RANGE) / 1000 == lastModified / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean canUseSendfile(HttpServletRequest request, long length) {
+        return length >= SENDFILE_MIN_SIZE
+                && HttpMethod.GET.matches(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR));
+    }
+
     //    @Value("${file.upload-dir:uploads/messages}")
 //    private String uploadDir;
 //
@@ -28,9 +28,11 @@ public class MessageController {
     public ResponseEntity<List<MessageResponse>> getChatMessages(
             @PathVariable Long chatId,
             @RequestParam(defaultValue = "100") Integer limit,
-            @RequestParam(defaultValue = "0") Integer offset) {
+            @RequestParam(defaultValue = "0") Integer offset,
+            @RequestParam(value = "before", required = false) Long before,
+            @RequestParam(value = "after", required = false) Long after) {
 
-        List<MessageResponse> messages = messageService.getChatMessages(chatId, limit, offset);
+        List<MessageResponse> messages = messageService.getChatMessages(chatId, limit, offset, before, after);
         return ResponseEntity.ok(messages);
     }
 
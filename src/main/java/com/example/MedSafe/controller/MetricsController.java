@@ -0,0 +1,53 @@
+package com.example.MedSafe.controller;
+
+import com.example.MedSafe.model.MetricRollup.Granularity;
+import com.example.MedSafe.model.MetricRollup.Metric;
+import com.example.MedSafe.model.dto.MetricPoint;
+import com.example.MedSafe.service.MetricRollupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Временные ряды для графиков: читаются из metric_rollups, а не из исходных таблиц
+ */
+@RestController
+@RequestMapping("/api/metrics")
+@RequiredArgsConstructor
+public class MetricsController {
+
+    private static final int DEFAULT_RANGE_DAYS = 30;
+
+    private final MetricRollupService metricRollupService;
+
+    /**
+     * Ряд метрики (appointments, diagnoses, tests, revenue) за [from, to); по умолчанию — последние 30 дней по дням
+     */
+    @GetMapping("/{metric}")
+    public ResponseEntity<?> getRange(@PathVariable String metric,
+                                      @RequestParam(defaultValue = "day") String granularity,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                      @RequestParam(required = false) Integer doctorId) {
+        try {
+            LocalDate end = to != null ? to : LocalDate.now().plusDays(1);
+            LocalDate start = from != null ? from : end.minusDays(DEFAULT_RANGE_DAYS);
+            List<MetricPoint> points = metricRollupService.getRange(
+                    Metric.valueOf(metric.toUpperCase(Locale.ROOT)),
+                    Granularity.valueOf(granularity.toUpperCase(Locale.ROOT)),
+                    start, end, doctorId);
+            return ResponseEntity.ok(points);
+        } catch (IllegalArgumentException e) {
+            Map<String, String> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.MedSafe.controller;
+
+import com.example.MedSafe.service.PresenceService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/v1/presence")
+@RequiredArgsConstructor
+public class PresenceController {
+
+    private static final int MAX_QUERY_SIZE = 500;
+
+    private final PresenceService presenceService;
+
+    /**
+     * Онлайн-статус нескольких пользователей одним запросом: GET /api/v1/presence?ids=1,2,3
+     */
+    @GetMapping
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Map<Integer, Boolean>> getOnlineStatus(@RequestParam List<Integer> ids) {
+        if (ids.size() > MAX_QUERY_SIZE) {
+            throw new IllegalArgumentException("Too many ids, max " + MAX_QUERY_SIZE);
+        }
+        return ResponseEntity.ok(presenceService.getOnlineStatus(ids));
+    }
+
+    /**
+     * Heartbeat из открытого STOMP-соединения, продлевает онлайн-статус
+     */
+    @MessageMapping("/presence.heartbeat")
+    public void handleHeartbeat(Principal principal) {
+        if (principal != null) {
+            presenceService.heartbeat(principal.getName());
+        }
+    }
+}
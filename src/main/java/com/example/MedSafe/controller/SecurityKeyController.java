@@ -2,7 +2,9 @@ package com.example.MedSafe.controller;
 
 import com.example.MedSafe.model.SecurityKey;
 import com.example.MedSafe.model.User;
+import com.example.MedSafe.model.dto.KeyPairPoolStats;
 import com.example.MedSafe.model.dto.RsaGenerateRequest;
+import com.example.MedSafe.service.KeyPairPool;
 import com.example.MedSafe.service.SecurityKeyService;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +17,7 @@ import org.springframework.web.bind.annotation.*;
 @RequiredArgsConstructor
 public class SecurityKeyController {
     private final SecurityKeyService securityKeyService;
+    private final KeyPairPool keyPairPool;
 
     // Генерация RSA ключей
     @PostMapping("/generate/{userId}")
@@ -24,6 +27,13 @@ public class SecurityKeyController {
         return securityKeyService.generateKeyPair(userId);
     }
 
+    // Состояние пула заранее сгенерированных ключей
+    @GetMapping("/pool")
+    @PreAuthorize("isAuthenticated()")
+    public KeyPairPoolStats getPoolStats() {
+        return keyPairPool.getStats();
+    }
+
     // Получение публичного ключа
     @GetMapping("/public/{userId}")
     @PreAuthorize("isAuthenticated()")
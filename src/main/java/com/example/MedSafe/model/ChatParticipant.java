@@ -30,6 +30,11 @@ public class ChatParticipant {
     @Column(name = "last_read_at")
     private LocalDateTime lastReadAt;
 
+    // Счётчик непрочитанных, обновляется атомарными UPDATE в ChatParticipantRepository
+    @Column(name = "unread_count", nullable = false)
+    @Builder.Default
+    private Integer unreadCount = 0;
+
     @PrePersist
     protected void onCreate() {
         joinedAt = LocalDateTime.now();
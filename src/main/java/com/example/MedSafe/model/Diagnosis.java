@@ -1,5 +1,7 @@
 package com.example.MedSafe.model;
 
+import com.example.MedSafe.util.CiphertextFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Size;
 import lombok.*;
@@ -21,10 +23,16 @@ public class Diagnosis {
     @JoinColumn(name = "record_id", nullable = false)
     private MedicalRecord medicalRecord;
 
-    @Column(nullable = false, columnDefinition = "TEXT")
+    // Текст диагноза; null, если запись хранится в бинарном виде (ciphertext)
+    @Column(columnDefinition = "TEXT")
     @Size(max = 1000)
     private String diagnosis;
 
+    // Зашифрованный диагноз в бинарном формате (см. CiphertextFormat)
+    @JsonIgnore
+    @Column(columnDefinition = "BYTEA")
+    private byte[] ciphertext;
+
     @Column(nullable = false)
     private LocalDate diagnosisDate;
 
@@ -36,4 +44,11 @@ public class Diagnosis {
         this.diagnosis = diagnosis;
         this.diagnosisDate = diagnosisDate;
     }
+
+    /**
+     * Для API бинарная запись отдаётся в прежнем Base64-виде
+     */
+    public String getDiagnosis() {
+        return ciphertext != null ? CiphertextFormat.toText(ciphertext) : diagnosis;
+    }
 }
@@ -4,6 +4,7 @@ import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
+import java.time.LocalTime;
 
 @Entity
 @Table(name = "doctors")
@@ -23,6 +24,13 @@ public class Doctor {
 
     private String contactNumber;
 
+    // Часы приёма и длина слота; null — значения по умолчанию (appointments.slots.*)
+    private LocalTime workStart;
+
+    private LocalTime workEnd;
+
+    private Integer slotMinutes;
+
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt = LocalDateTime.now();
 
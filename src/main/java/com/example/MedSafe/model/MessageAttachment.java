@@ -33,6 +33,10 @@ public class MessageAttachment {
     @Column(name = "file_size")
     private Long fileSize;
 
+    // SHA-256 содержимого, hex
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
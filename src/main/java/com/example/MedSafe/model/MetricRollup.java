@@ -0,0 +1,64 @@
+package com.example.MedSafe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Агрегат метрики за час или день. Строки пишет только MetricRollupService (INSERT ... SELECT GROUP BY),
+ * doctorId = 0 и dimension = "" означают «без разреза»
+ */
+@Entity
+@Table(name = "metric_rollups")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MetricRollup {
+
+    public enum Granularity {
+        HOUR,
+        DAY
+    }
+
+    public enum Metric {
+        // По статусу, на врача
+        APPOINTMENTS,
+        // Без врача (doctor_id = 0)
+        DIAGNOSES,
+        TESTS,
+        // Оплаченные платежи по валюте, на врача приёма
+        REVENUE
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "rollup_id")
+    private Long rollupId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "granularity", nullable = false, length = 8)
+    private Granularity granularity;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "metric", nullable = false, length = 32)
+    private Metric metric;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "doctor_id", nullable = false)
+    private Integer doctorId;
+
+    @Column(name = "dimension", nullable = false, length = 50)
+    private String dimension;
+
+    @Column(name = "event_count", nullable = false)
+    private Long eventCount;
+
+    @Column(name = "amount", nullable = false, precision = 14, scale = 2)
+    private BigDecimal amount;
+}
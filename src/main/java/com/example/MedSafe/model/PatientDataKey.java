@@ -0,0 +1,37 @@
+package com.example.MedSafe.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Ключ шифрования данных пациента: AES-256, завёрнутый публичным RSA-ключом пользователя.
+ * publicKeySha256 — отпечаток RSA-ключа, которым завёрнут (после перегенерации ключей создаётся новый)
+ */
+@Entity
+@Table(name = "patient_data_keys")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PatientDataKey {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "data_key_id")
+    private Integer dataKeyId;
+
+    @Column(name = "user_id", nullable = false)
+    private Integer userId;
+
+    @Column(name = "wrapped_key", nullable = false, columnDefinition = "TEXT")
+    private String wrappedKey;
+
+    @Column(name = "public_key_sha256", nullable = false, length = 64)
+    private String publicKeySha256;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt = LocalDateTime.now();
+}
@@ -46,4 +46,7 @@ public class User {
 
     @Column(name = "online")
     private Boolean online = false;
+
+    @Column(name = "last_seen")
+    private LocalDateTime lastSeen;
 }
\ No newline at end of file
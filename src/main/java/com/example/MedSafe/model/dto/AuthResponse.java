@@ -13,4 +13,8 @@ public class AuthResponse {
     private String userName;
     private String jwt;
     private Set<Role> roles;
+    // Ротируемый refresh-токен для POST /api/auth/refresh
+    private String refreshToken;
+    // Время жизни jwt в секундах
+    private long expiresIn;
 }
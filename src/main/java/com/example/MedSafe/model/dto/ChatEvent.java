@@ -0,0 +1,24 @@
+package com.example.MedSafe.model.dto;
+
+import com.example.MedSafe.dto.MessageResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatEvent {
+    private String type; // "typing", "read", "resume"
+    private Long chatId;
+    private Integer userId;
+    private Boolean typing;
+    private LocalDateTime readAt;
+    private List<MessageResponse> messages; // для "resume": пропущенные сообщения
+    private Long timestamp;
+}
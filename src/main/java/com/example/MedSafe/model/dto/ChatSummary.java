@@ -0,0 +1,29 @@
+package com.example.MedSafe.model.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Проекция для списка чатов: чат, собеседник, последнее сообщение и
+ * количество непрочитанных одной строкой (см. ChatRepository.findChatSummaries)
+ */
+public interface ChatSummary {
+    Long getChatId();
+
+    LocalDateTime getCreatedAt();
+
+    LocalDateTime getUpdatedAt();
+
+    Integer getParticipantId();
+
+    String getParticipantFirstName();
+
+    String getParticipantLastName();
+
+    String getParticipantEmail();
+
+    String getLastMessage();
+
+    LocalDateTime getLastMessageAt();
+
+    Long getUnreadCount();
+}
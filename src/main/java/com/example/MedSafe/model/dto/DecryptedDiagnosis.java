@@ -0,0 +1,22 @@
+package com.example.MedSafe.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Одна строка ответа пакетной расшифровки. При ошибке diagnosis пустой, а error содержит причину
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DecryptedDiagnosis {
+    private Integer diagnosisId;
+    private String diagnosis;
+    private LocalDate diagnosisDate;
+    private String error;
+}
@@ -0,0 +1,25 @@
+package com.example.MedSafe.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Свободные слоты врача по дням: время начала каждого свободного слота длиной slotMinutes
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DoctorFreeSlots {
+    private Integer doctorId;
+    private String specialty;
+    private int slotMinutes;
+    private Map<LocalDate, List<LocalTime>> freeSlots;
+}
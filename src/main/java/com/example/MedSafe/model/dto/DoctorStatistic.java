@@ -0,0 +1,16 @@
+package com.example.MedSafe.model.dto;
+
+/**
+ * Проекция для дашборда: врач и посчитанная в SQL метрика (см. DoctorRepository.findTopByAppointments)
+ */
+public interface DoctorStatistic {
+    Integer getDoctorId();
+
+    String getFirstName();
+
+    String getLastName();
+
+    String getSpecialty();
+
+    Long getTotal();
+}
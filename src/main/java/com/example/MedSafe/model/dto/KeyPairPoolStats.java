@@ -0,0 +1,23 @@
+package com.example.MedSafe.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Состояние пула RSA-ключей: глубина, счётчики и скорость генерации
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class KeyPairPoolStats {
+    private int depth;
+    private int capacity;
+    private long generated;
+    private long taken;
+    // Сколько раз пул был пуст и ключ генерировался в потоке запроса
+    private long misses;
+    private double generationsPerSecond;
+}
@@ -14,6 +14,7 @@ import java.util.List;
 @Builder
 public class MessageResponse {
     private Long id;
+    private Long chatId;
     private Integer senderId;
     private String content;
     private LocalDateTime createdAt;
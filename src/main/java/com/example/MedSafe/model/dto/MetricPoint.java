@@ -0,0 +1,18 @@
+package com.example.MedSafe.model.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Точка графика: начало часа/дня, разрез (статус, валюта или пусто), число событий и сумма
+ * (см. MetricRollupRepository.findRange)
+ */
+public interface MetricPoint {
+    LocalDateTime getBucketStart();
+
+    String getDimension();
+
+    Long getEventCount();
+
+    BigDecimal getAmount();
+}
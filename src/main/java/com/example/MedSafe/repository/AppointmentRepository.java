@@ -7,6 +7,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -27,25 +28,39 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Intege
             @Param("cancelled") String cancelled
     );
 
-    // 4. Найти записи по дате (формат YYYY-MM-DD)
-    @Query("SELECT a FROM Appointment a WHERE DATE(a.appointmentDate) = :date")
-    List<Appointment> findByAppointmentDate(@Param("date") String date);
-
-    // 5. Проверить доступность времени у врача
-    @Query("SELECT a FROM Appointment a WHERE a.doctor.doctorId = :doctorId " +
-            "AND DATE(a.appointmentDate) = :date " +
-            "AND FUNCTION('HOUR', a.appointmentDate) = :hour " +
-            "AND FUNCTION('MINUTE', a.appointmentDate) = :minute " +
-            "AND a.status != :cancelled")
-    List<Appointment> findByDoctorIdAndAppointmentDateAndAppointmentTimeAndStatusNot(
-            @Param("doctorId") Integer doctorId,
-            @Param("date") String date,
-            @Param("time") String time,
-            @Param("cancelled") String cancelled
-    );
+    // 4. Найти записи за полуоткрытый интервал [from, to) — по индексу appointments(appointment_date)
+    @Query("SELECT a FROM Appointment a " +
+            "WHERE a.appointmentDate >= :from AND a.appointmentDate < :to " +
+            "ORDER BY a.appointmentDate")
+    List<Appointment> findByAppointmentDateRange(@Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
+
+    // 5. Есть ли у врача неотменённая запись в [from, to) — по индексу (doctor_id, appointment_date)
+    @Query("SELECT COUNT(a) > 0 FROM Appointment a " +
+            "WHERE a.doctor.doctorId = :doctorId " +
+            "AND a.appointmentDate >= :from AND a.appointmentDate < :to " +
+            "AND LOWER(a.status) <> :cancelled")
+    boolean existsActiveByDoctorIdInRange(@Param("doctorId") Integer doctorId,
+                                          @Param("from") LocalDateTime from,
+                                          @Param("to") LocalDateTime to,
+                                          @Param("cancelled") String cancelled);
 
-    // 6. Подсчитать записи по статусу
+    // 6. Время неотменённых записей нескольких врачей за [from, to) одним запросом: [doctorId, appointmentDate]
+    @Query("SELECT a.doctor.doctorId, a.appointmentDate FROM Appointment a " +
+            "WHERE a.doctor.doctorId IN :doctorIds " +
+            "AND a.appointmentDate >= :from AND a.appointmentDate < :to " +
+            "AND LOWER(a.status) <> :cancelled")
+    List<Object[]> findActiveTimesByDoctorIdsInRange(@Param("doctorIds") Collection<Integer> doctorIds,
+                                                     @Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to,
+                                                     @Param("cancelled") String cancelled);
+
+    // 7. Подсчитать записи по статусу
     @Query("SELECT COUNT(a) FROM Appointment a WHERE a.status = :scheduled")
     long countByStatus(@Param("scheduled") String scheduled);
 
+    // 8. Число записей по каждому статусу одним запросом: [статус в нижнем регистре, количество]
+    @Query("SELECT LOWER(a.status), COUNT(a) FROM Appointment a GROUP BY LOWER(a.status)")
+    List<Object[]> countGroupByStatus();
+
 }
\ No newline at end of file
@@ -2,10 +2,13 @@ package com.example.MedSafe.repository;
 
 import com.example.MedSafe.model.ChatParticipant;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -22,4 +25,45 @@ public interface ChatParticipantRepository extends JpaRepository<ChatParticipant
             "AND cp.user.userId != :userId")
     Optional<ChatParticipant> findOtherParticipant(@Param("chatId") Long chatId,
                                                    @Param("userId") Integer userId);
-}
\ No newline at end of file
+
+    @Query("SELECT cp FROM ChatParticipant cp " +
+            "WHERE cp.chat.chatId = :chatId")
+    List<ChatParticipant> findAllByChatId(@Param("chatId") Long chatId);
+
+    @Query("SELECT cp FROM ChatParticipant cp " +
+            "WHERE cp.chat.chatId = :chatId " +
+            "AND cp.user.username = :username")
+    Optional<ChatParticipant> findByChatIdAndUsername(@Param("chatId") Long chatId,
+                                                      @Param("username") String username);
+
+    // Инкремент в одном UPDATE — корректен при параллельной отправке сообщений
+    @Modifying
+    @Query("UPDATE ChatParticipant cp SET cp.unreadCount = cp.unreadCount + 1 " +
+            "WHERE cp.chat.chatId = :chatId " +
+            "AND cp.user.userId != :senderId")
+    int incrementUnreadCount(@Param("chatId") Long chatId,
+                             @Param("senderId") Integer senderId);
+
+    // Удалённое сообщение больше не считается непрочитанным у тех, кто его ещё не прочитал
+    @Modifying
+    @Query("UPDATE ChatParticipant cp SET cp.unreadCount = cp.unreadCount - 1 " +
+            "WHERE cp.chat.chatId = :chatId " +
+            "AND cp.user.userId != :senderId " +
+            "AND cp.unreadCount > 0 " +
+            "AND (cp.lastReadAt IS NULL OR cp.lastReadAt < :createdAt)")
+    int decrementUnreadCount(@Param("chatId") Long chatId,
+                             @Param("senderId") Integer senderId,
+                             @Param("createdAt") LocalDateTime createdAt);
+
+    @Modifying
+    @Query("UPDATE ChatParticipant cp SET cp.unreadCount = 0, cp.lastReadAt = :readAt " +
+            "WHERE cp.chat.chatId = :chatId " +
+            "AND cp.user.userId = :userId")
+    int resetUnreadCount(@Param("chatId") Long chatId,
+                         @Param("userId") Integer userId,
+                         @Param("readAt") LocalDateTime readAt);
+
+    @Query("SELECT COALESCE(SUM(cp.unreadCount), 0) FROM ChatParticipant cp " +
+            "WHERE cp.user.userId = :userId")
+    long sumUnreadCountByUserId(@Param("userId") Integer userId);
+}
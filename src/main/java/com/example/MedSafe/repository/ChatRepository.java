@@ -1,6 +1,7 @@
 package com.example.MedSafe.repository;
 
 import com.example.MedSafe.model.Chat;
+import com.example.MedSafe.model.dto.ChatSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -12,12 +13,41 @@ import java.util.Optional;
 @Repository
 public interface ChatRepository extends JpaRepository<Chat, Long> {
 
+    // Собеседник, последнее сообщение и непрочитанные для каждого чата пользователя
+    String CHAT_SUMMARY_SELECT = "SELECT c.chat_id AS chatId, " +
+            "c.created_at AS createdAt, " +
+            "c.updated_at AS updatedAt, " +
+            "u.user_id AS participantId, " +
+            "u.first_name AS participantFirstName, " +
+            "u.last_name AS participantLastName, " +
+            "u.email AS participantEmail, " +
+            "lm.content AS lastMessage, " +
+            "lm.created_at AS lastMessageAt, " +
+            "me.unread_count AS unreadCount " +
+            "FROM chat_participants me " +
+            "JOIN chats c ON c.chat_id = me.chat_id " +
+            "LEFT JOIN LATERAL (SELECT cp.user_id FROM chat_participants cp " +
+            "  WHERE cp.chat_id = c.chat_id AND cp.user_id <> me.user_id " +
+            "  ORDER BY cp.id LIMIT 1) other ON TRUE " +
+            "LEFT JOIN users u ON u.user_id = other.user_id " +
+            "LEFT JOIN LATERAL (SELECT m.content, m.created_at FROM messages m " +
+            "  WHERE m.chat_id = c.chat_id AND m.is_deleted = FALSE " +
+            "  ORDER BY m.created_at DESC, m.message_id DESC LIMIT 1) lm ON TRUE " +
+            "WHERE me.user_id = :userId ";
+
     @Query("SELECT c FROM Chat c " +
             "JOIN c.participants cp " +
             "WHERE cp.user.userId = :userId " +
             "ORDER BY c.updatedAt DESC")
     List<Chat> findAllByUserId(@Param("userId") Integer userId);
 
+    @Query(value = CHAT_SUMMARY_SELECT + "ORDER BY c.updated_at DESC", nativeQuery = true)
+    List<ChatSummary> findChatSummaries(@Param("userId") Integer userId);
+
+    @Query(value = CHAT_SUMMARY_SELECT + "AND c.chat_id = :chatId", nativeQuery = true)
+    Optional<ChatSummary> findChatSummary(@Param("userId") Integer userId,
+                                          @Param("chatId") Long chatId);
+
     @Query("SELECT c FROM Chat c " +
             "JOIN c.participants cp1 " +
             "JOIN c.participants cp2 " +
@@ -26,4 +56,4 @@ public interface ChatRepository extends JpaRepository<Chat, Long> {
             "AND (SELECT COUNT(cp3) FROM ChatParticipant cp3 WHERE cp3.chat = c) = 2")
     Optional<Chat> findPrivateChatBetweenUsers(@Param("userId1") Integer userId1,
                                                @Param("userId2") Integer userId2);
-}
\ No newline at end of file
+}
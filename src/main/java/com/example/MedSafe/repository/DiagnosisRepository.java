@@ -2,9 +2,11 @@ package com.example.MedSafe.repository;
 
 import com.example.MedSafe.model.Diagnosis;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -29,4 +31,15 @@ public interface DiagnosisRepository extends JpaRepository<Diagnosis, Integer> {
             "WHERE mr.patient_id = :patientId",
             nativeQuery = true)
     List<Diagnosis> findByPatientId(@Param("patientId") Integer patientId);
+
+    // Перешифровка записи: обновляем, только если шифротекст (текстовый или бинарный) не поменялся с момента чтения
+    @Transactional
+    @Modifying
+    @Query("UPDATE Diagnosis d SET d.diagnosis = :newText, d.ciphertext = :newCiphertext " +
+            "WHERE d.diagnosisId = :diagnosisId AND (d.diagnosis = :oldText OR d.ciphertext = :oldCiphertext)")
+    int replaceCiphertext(@Param("diagnosisId") Integer diagnosisId,
+                          @Param("oldText") String oldText,
+                          @Param("oldCiphertext") byte[] oldCiphertext,
+                          @Param("newText") String newText,
+                          @Param("newCiphertext") byte[] newCiphertext);
 }
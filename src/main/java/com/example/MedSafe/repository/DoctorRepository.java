@@ -1,12 +1,55 @@
 package com.example.MedSafe.repository;
 
 import com.example.MedSafe.model.Doctor;
+import com.example.MedSafe.model.dto.DoctorStatistic;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DoctorRepository extends JpaRepository<Doctor,Integer> {
 
+    // Врач с именем и метрикой; s — подзапрос (doctor_id, total), врачи без записей получают 0
+    String DOCTOR_STATISTIC_SELECT = "SELECT doc.doctor_id AS doctorId, " +
+            "u.first_name AS firstName, " +
+            "u.last_name AS lastName, " +
+            "doc.specialty AS specialty, " +
+            "COALESCE(s.total, 0) AS total " +
+            "FROM doctors doc " +
+            "LEFT JOIN users u ON u.user_id = doc.user_id " +
+            "LEFT JOIN (";
+
+    String DOCTOR_STATISTIC_ORDER = ") s ON s.doctor_id = doc.doctor_id " +
+            "ORDER BY total DESC, doc.doctor_id " +
+            "LIMIT :limit";
+
     Optional<Doctor> findByUserUserId(Integer userId);
+
+    List<Doctor> findBySpecialtyIgnoreCase(String specialty);
+
+    // Число приёмов на врача одним GROUP BY
+    @Query(value = DOCTOR_STATISTIC_SELECT +
+            "SELECT a.doctor_id, COUNT(*) AS total FROM appointments a GROUP BY a.doctor_id" +
+            DOCTOR_STATISTIC_ORDER,
+            nativeQuery = true)
+    List<DoctorStatistic> findTopByAppointments(@Param("limit") int limit);
+
+    // Прямой связи диагноза с врачом нет: диагноз засчитывается врачу последнего
+    // неотменённого приёма пациента не позже даты диагноза (индекс appointments(patient_id, appointment_date))
+    @Query(value = DOCTOR_STATISTIC_SELECT +
+            "SELECT lv.doctor_id, COUNT(*) AS total FROM diagnoses d " +
+            "JOIN medical_records mr ON mr.record_id = d.record_id " +
+            "JOIN LATERAL (SELECT a.doctor_id FROM appointments a " +
+            "  WHERE a.patient_id = mr.patient_id " +
+            "  AND LOWER(a.status) <> 'cancelled' " +
+            "  AND a.appointment_date < d.diagnosis_date + INTERVAL '1 day' " +
+            "  ORDER BY a.appointment_date DESC LIMIT 1) lv ON TRUE " +
+            "GROUP BY lv.doctor_id" +
+            DOCTOR_STATISTIC_ORDER,
+            nativeQuery = true)
+    List<DoctorStatistic> findTopByDiagnoses(@Param("limit") int limit);
 }
@@ -0,0 +1,50 @@
+package com.example.MedSafe.repository;
+
+import com.example.MedSafe.model.FileBlob;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileBlobRepository extends JpaRepository<FileBlob, String> {
+
+    // Создаёт запись или увеличивает счётчик ссылок; строка блокируется до конца транзакции
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO file_blobs (sha256, size, content_type, ref_count, created_at, updated_at) " +
+            "VALUES (:sha256, :size, :contentType, 1, now(), now()) " +
+            "ON CONFLICT (sha256) DO UPDATE " +
+            "SET ref_count = file_blobs.ref_count + 1, updated_at = now()",
+            nativeQuery = true)
+    int acquire(@Param("sha256") String sha256,
+                @Param("size") Long size,
+                @Param("contentType") String contentType);
+
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE file_blobs SET ref_count = ref_count - 1, updated_at = now() " +
+            "WHERE sha256 = :sha256 AND ref_count > 0",
+            nativeQuery = true)
+    int release(@Param("sha256") String sha256);
+
+    @Query(value = "SELECT sha256 FROM file_blobs " +
+            "WHERE ref_count = 0 AND updated_at < :before " +
+            "LIMIT :limit",
+            nativeQuery = true)
+    List<String> findUnreferenced(@Param("before") LocalDateTime before,
+                                  @Param("limit") int limit);
+
+    // Блокировка перед удалением: параллельный acquire дождётся конца сборки мусора
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM FileBlob b WHERE b.sha256 = :sha256 AND b.refCount = 0")
+    Optional<FileBlob> findUnreferencedForUpdate(@Param("sha256") String sha256);
+}
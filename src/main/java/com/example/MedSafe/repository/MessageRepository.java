@@ -17,23 +17,54 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
     @Query("SELECT m FROM Message m " +
             "WHERE m.chat.chatId = :chatId " +
             "AND m.isDeleted = false " +
-            "ORDER BY m.createdAt DESC")
+            "ORDER BY m.createdAt DESC, m.messageId DESC")
     List<Message> findByChatId(@Param("chatId") Long chatId, Pageable pageable);
 
+    // Keyset-пагинация по индексу (chat_id, created_at, message_id): сообщения старше курсора.
+    // Избыточное createdAt <= :createdAt даёт планировщику границу диапазона по индексу — без неё
+    // OR-условие только фильтрует, и каждая страница идёт по индексу от самого нового сообщения
     @Query("SELECT m FROM Message m " +
             "WHERE m.chat.chatId = :chatId " +
             "AND m.isDeleted = false " +
-            "ORDER BY m.createdAt DESC")
-    List<Message> findLastMessageByChatId(@Param("chatId") Long chatId, Pageable pageable);
+            "AND m.createdAt <= :createdAt " +
+            "AND (m.createdAt < :createdAt " +
+            "OR (m.createdAt = :createdAt AND m.messageId < :messageId)) " +
+            "ORDER BY m.createdAt DESC, m.messageId DESC")
+    List<Message> findByChatIdBefore(@Param("chatId") Long chatId,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("messageId") Long messageId,
+                                     Pageable pageable);
 
-    @Query("SELECT COUNT(m) FROM Message m " +
+    // Сообщения новее курсора — клиент догружает только то, что пришло после его последнего.
+    // createdAt >= :createdAt — граница диапазона по индексу, как и выше
+    @Query("SELECT m FROM Message m " +
             "WHERE m.chat.chatId = :chatId " +
-            "AND m.sender.userId != :userId " +
-            "AND m.createdAt > :lastReadAt " +
-            "AND m.isDeleted = false")
-    Integer countUnreadMessages(@Param("chatId") Long chatId,
-                                @Param("userId") Integer userId,
-                                @Param("lastReadAt") LocalDateTime lastReadAt);
+            "AND m.isDeleted = false " +
+            "AND m.createdAt >= :createdAt " +
+            "AND (m.createdAt > :createdAt " +
+            "OR (m.createdAt = :createdAt AND m.messageId > :messageId)) " +
+            "ORDER BY m.createdAt ASC, m.messageId ASC")
+    List<Message> findByChatIdAfter(@Param("chatId") Long chatId,
+                                    @Param("createdAt") LocalDateTime createdAt,
+                                    @Param("messageId") Long messageId,
+                                    Pageable pageable);
+
+    // Старый offset-режим: LIMIT/OFFSET напрямую, offset не обязан быть кратен limit
+    @Query(value = "SELECT * FROM messages " +
+            "WHERE chat_id = :chatId " +
+            "AND is_deleted = FALSE " +
+            "ORDER BY created_at DESC, message_id DESC " +
+            "LIMIT :limit OFFSET :offset",
+            nativeQuery = true)
+    List<Message> findByChatIdWithOffset(@Param("chatId") Long chatId,
+                                         @Param("limit") Integer limit,
+                                         @Param("offset") Integer offset);
+
+    @Query("SELECT m FROM Message m " +
+            "WHERE m.chat.chatId = :chatId " +
+            "AND m.isDeleted = false " +
+            "ORDER BY m.createdAt DESC")
+    List<Message> findLastMessageByChatId(@Param("chatId") Long chatId, Pageable pageable);
 
     @Modifying
     @Query("UPDATE Message m SET m.readAt = :readAt " +
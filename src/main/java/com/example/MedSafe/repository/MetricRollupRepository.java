@@ -0,0 +1,122 @@
+package com.example.MedSafe.repository;
+
+import com.example.MedSafe.model.MetricRollup;
+import com.example.MedSafe.model.dto.MetricPoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MetricRollupRepository extends JpaRepository<MetricRollup, Long> {
+
+    String INSERT_ROLLUP = "INSERT INTO metric_rollups " +
+            "(granularity, metric, bucket_start, doctor_id, dimension, event_count, amount) ";
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM metric_rollups " +
+            "WHERE granularity = :granularity AND bucket_start >= :from AND bucket_start < :to",
+            nativeQuery = true)
+    int deleteBuckets(@Param("granularity") String granularity,
+                      @Param("from") LocalDateTime from,
+                      @Param("to") LocalDateTime to);
+
+    @Transactional
+    @Modifying
+    @Query(value = "DELETE FROM metric_rollups WHERE granularity = 'HOUR' AND bucket_start < :cutoff",
+            nativeQuery = true)
+    int deleteHoursBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    // Приёмы считаются по времени приёма: статус меняется, пока запись в окне пересчёта
+    @Transactional
+    @Modifying
+    @Query(value = INSERT_ROLLUP +
+            "SELECT 'HOUR', 'APPOINTMENTS', date_trunc('hour', a.appointment_date), COALESCE(a.doctor_id, 0), " +
+            "LOWER(COALESCE(a.status, '')), COUNT(*), 0 " +
+            "FROM appointments a " +
+            "WHERE a.appointment_date >= :from AND a.appointment_date < :to " +
+            "GROUP BY 3, 4, 5",
+            nativeQuery = true)
+    int insertAppointmentHours(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Transactional
+    @Modifying
+    @Query(value = INSERT_ROLLUP +
+            "SELECT 'HOUR', 'DIAGNOSES', date_trunc('hour', d.created_at), 0, '', COUNT(*), 0 " +
+            "FROM diagnoses d " +
+            "WHERE d.created_at >= :from AND d.created_at < :to " +
+            "GROUP BY 3",
+            nativeQuery = true)
+    int insertDiagnosisHours(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Transactional
+    @Modifying
+    @Query(value = INSERT_ROLLUP +
+            "SELECT 'HOUR', 'TESTS', date_trunc('hour', t.created_at), 0, '', COUNT(*), 0 " +
+            "FROM tests t " +
+            "WHERE t.created_at >= :from AND t.created_at < :to " +
+            "GROUP BY 3",
+            nativeQuery = true)
+    int insertTestHours(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Transactional
+    @Modifying
+    @Query(value = INSERT_ROLLUP +
+            "SELECT 'HOUR', 'REVENUE', date_trunc('hour', p.paid_at), COALESCE(a.doctor_id, 0), " +
+            "LOWER(COALESCE(p.currency, '')), COUNT(*), COALESCE(SUM(p.amount), 0) " +
+            "FROM payments p " +
+            "LEFT JOIN appointments a ON a.appointment_id = p.appointment_id " +
+            "WHERE p.status = 'paid' AND p.paid_at >= :from AND p.paid_at < :to " +
+            "GROUP BY 3, 4, 5",
+            nativeQuery = true)
+    int insertRevenueHours(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Дни собираются из уже посчитанных часов, исходные таблицы второй раз не читаются
+    @Transactional
+    @Modifying
+    @Query(value = INSERT_ROLLUP +
+            "SELECT 'DAY', r.metric, date_trunc('day', r.bucket_start), r.doctor_id, r.dimension, " +
+            "SUM(r.event_count), SUM(r.amount) " +
+            "FROM metric_rollups r " +
+            "WHERE r.granularity = 'HOUR' AND r.bucket_start >= :from AND r.bucket_start < :to " +
+            "GROUP BY r.metric, 3, r.doctor_id, r.dimension",
+            nativeQuery = true)
+    int insertDaysFromHours(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Ряд для графика; doctorId < 0 — по всем врачам
+    @Query(value = "SELECT r.bucket_start AS bucketStart, " +
+            "r.dimension AS dimension, " +
+            "SUM(r.event_count) AS eventCount, " +
+            "SUM(r.amount) AS amount " +
+            "FROM metric_rollups r " +
+            "WHERE r.granularity = :granularity AND r.metric = :metric " +
+            "AND r.bucket_start >= :from AND r.bucket_start < :to " +
+            "AND (:doctorId < 0 OR r.doctor_id = :doctorId) " +
+            "GROUP BY r.bucket_start, r.dimension " +
+            "ORDER BY r.bucket_start, r.dimension",
+            nativeQuery = true)
+    List<MetricPoint> findRange(@Param("granularity") String granularity,
+                                @Param("metric") String metric,
+                                @Param("from") LocalDateTime from,
+                                @Param("to") LocalDateTime to,
+                                @Param("doctorId") int doctorId);
+
+    // Начало истории для первичного заполнения
+    @Query("SELECT MIN(a.appointmentDate) FROM Appointment a")
+    LocalDateTime findFirstAppointmentDate();
+
+    @Query("SELECT MIN(d.createdAt) FROM Diagnosis d")
+    LocalDateTime findFirstDiagnosisCreatedAt();
+
+    @Query("SELECT MIN(t.createdAt) FROM Test t")
+    LocalDateTime findFirstTestCreatedAt();
+
+    @Query("SELECT MIN(p.paidAt) FROM Payment p WHERE p.status = 'paid'")
+    LocalDateTime findFirstPaidAt();
+}
@@ -0,0 +1,12 @@
+package com.example.MedSafe.repository;
+
+import com.example.MedSafe.model.PatientDataKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface PatientDataKeyRepository extends JpaRepository<PatientDataKey, Integer> {
+    Optional<PatientDataKey> findTopByUserIdOrderByDataKeyIdDesc(Integer userId);
+}
@@ -2,8 +2,14 @@ package com.example.MedSafe.repository;
 
 import com.example.MedSafe.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -13,4 +19,27 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     boolean existsByUsername(String username);
 
     Optional<User> findByUsername(String username);
+
+    @Query("SELECT u.userId FROM User u WHERE u.username = :username")
+    Optional<Integer> findIdByUsername(@Param("username") String username);
+
+    // Пачка изменений онлайн-статуса от PresenceService
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.online = :online, u.lastSeen = :lastSeen WHERE u.userId IN :userIds")
+    int updatePresence(@Param("userIds") Collection<Integer> userIds,
+                       @Param("online") boolean online,
+                       @Param("lastSeen") LocalDateTime lastSeen);
+
+    // Пересчитанный при входе хеш пароля (выросла стоимость BCrypt)
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.passwordHash = :passwordHash WHERE u.userId = :userId")
+    int updatePasswordHash(@Param("userId") Integer userId, @Param("passwordHash") String passwordHash);
+
+    // После рестарта в памяти никого нет — сбрасываем статусы, оставшиеся с прошлого запуска
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.online = false WHERE u.online = true")
+    int resetOnline();
 }
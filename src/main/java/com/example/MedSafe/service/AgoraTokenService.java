@@ -0,0 +1,123 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.util.RtcTokenBuilder2;
+import com.example.MedSafe.util.RtcTokenBuilder2.Role;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Выдача RTC-токенов Agora с кэшем по (канал, uid, роль, срок): при шквале звонков и переподключений
+ * один и тот же токен отдаётся повторно, пока он не отработал половину срока
+ */
+@Service
+public class AgoraTokenService {
+
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
+    // Билдер без состояния — один на сервис
+    private final RtcTokenBuilder2 builder = new RtcTokenBuilder2();
+    private final Map<TokenKey, CachedToken> tokens = new ConcurrentHashMap<>();
+
+    @Value("${agora.app-id}")
+    private String appId;
+
+    @Value("${agora.app-certificate}")
+    private String appCertificate;
+
+    @Value("${agora.token-cache.refresh-before:PT5M}")
+    private Duration refreshBefore;
+
+    public String getAppId() {
+        return appId;
+    }
+
+    /**
+     * Токен для входа в канал. Пустая строка — токен не удалось построить (неверные app-id/сертификат)
+     */
+    public String getToken(String channelName, int uid, Role role, int expireSeconds) {
+        TokenKey key = new TokenKey(channelName, uid, role, expireSeconds);
+        long now = System.currentTimeMillis();
+
+        CachedToken cached = tokens.get(key);
+        if (cached != null && cached.refreshAt > now) {
+            return cached.token;
+        }
+
+        // compute: одновременные запросы одного участника строят токен один раз.
+        // Некэшируемый токен (пустой, короткий срок, кэш полон) в карте не остаётся
+        CachedToken[] result = new CachedToken[1];
+        tokens.compute(key, (k, existing) -> {
+            result[0] = existing != null && existing.refreshAt > now ? existing : build(k, now);
+            return result[0].refreshAt > now ? result[0] : null;
+        });
+        return result[0].token;
+    }
+
+    @Scheduled(fixedDelayString = "${agora.token-cache.cleanup-interval:PT1M}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        tokens.values().removeIf(token -> token.refreshAt <= now);
+    }
+
+    private CachedToken build(TokenKey key, long now) {
+        String token = builder.buildTokenWithUid(appId, appCertificate, key.channelName, key.uid, key.role,
+                key.expireSeconds, key.expireSeconds);
+
+        // Токен живёт expireSeconds; отдаём его повторно не дольше половины срока и не позже,
+        // чем за refresh-before до истечения — клиент всегда получает хотя бы половину запрошенного времени.
+        // Пустой токен и слишком короткие сроки не кэшируем
+        long lifetime = key.expireSeconds * 1000L;
+        long refreshAt = now + Math.min(lifetime / 2, lifetime - refreshBefore.toMillis());
+        if (token.isEmpty() || refreshAt <= now || tokens.size() >= MAX_CACHED_TOKENS) {
+            refreshAt = now;
+        }
+        return new CachedToken(token, refreshAt);
+    }
+
+    private static final class TokenKey {
+        private final String channelName;
+        private final int uid;
+        private final Role role;
+        private final int expireSeconds;
+
+        private TokenKey(String channelName, int uid, Role role, int expireSeconds) {
+            this.channelName = channelName;
+            this.uid = uid;
+            this.role = role;
+            this.expireSeconds = expireSeconds;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TokenKey other)) {
+                return false;
+            }
+            return uid == other.uid && expireSeconds == other.expireSeconds
+                    && role == other.role && channelName.equals(other.channelName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(channelName, uid, role, expireSeconds);
+        }
+    }
+
+    private static final class CachedToken {
+        private final String token;
+        private final long refreshAt;
+
+        private CachedToken(String token, long refreshAt) {
+            this.token = token;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
@@ -9,22 +9,38 @@ import com.example.MedSafe.repository.DoctorRepository;
 import com.example.MedSafe.repository.PatientRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AppointmentService {
 
+    private static final String SLOT_TAKEN = "Time slot is already booked";
+    private static final String SLOT_UNIQUE_INDEX = "uk_appointments_doctor_slot";
+
     private final AppointmentRepository appointmentRepository;
     private final PatientRepository patientRepository;
     private final DoctorRepository doctorRepository;
+    private final SlotAvailabilityService slotAvailabilityService;
+    private final BookingLocks bookingLocks;
+
+    @Value("${appointments.booking.max-attempts:3}")
+    private int bookingMaxAttempts;
 
     public List<Appointment> findAll() {
         return appointmentRepository.findAll();
@@ -69,17 +85,19 @@ public class AppointmentService {
                 });
         log.info("Doctor found: {}", doctor.getDoctorId());
 
-        log.info("Creating new Appointment object");
-        Appointment newAppointment = new Appointment(
-                patient,
-                doctor,
-                appointmentRequestDTO.getAppointmentDate(),
-                appointmentRequestDTO.getStatus()
-        );
+        LocalDateTime start = appointmentRequestDTO.getAppointmentDate();
+        int slotMinutes = slotAvailabilityService.requireBookableSlot(doctor, start);
 
         log.info("Saving appointment to database");
-        Appointment savedAppointment = appointmentRepository.save(newAppointment);
+        Appointment savedAppointment = book(doctor.getDoctorId(), start, slotMinutes,
+                () -> appointmentRepository.saveAndFlush(new Appointment(
+                        patient,
+                        doctor,
+                        start,
+                        appointmentRequestDTO.getStatus()
+                )));
         log.info("Appointment saved with id: {}", savedAppointment.getAppointmentId());
+        slotAvailabilityService.invalidate(doctor.getDoctorId(), savedAppointment.getAppointmentDate());
 
         return savedAppointment;
     }
@@ -88,10 +106,23 @@ public class AppointmentService {
         return appointmentRepository.findById(Math.toIntExact(id))
                 .map(existingAppointment -> {
                     // Обновляем только разрешенные поля
-                    if (updatedAppointment.getAppointmentDate() != null) {
-                        existingAppointment.setAppointmentDate(updatedAppointment.getAppointmentDate());
+                    LocalDateTime newDate = updatedAppointment.getAppointmentDate();
+                    if (newDate == null || newDate.equals(existingAppointment.getAppointmentDate())) {
+                        return appointmentRepository.save(existingAppointment);
                     }
-                    return appointmentRepository.save(existingAppointment);
+
+                    // Перенос — это новая запись на слот: та же проверка и блокировка, что и при создании
+                    Doctor doctor = existingAppointment.getDoctor();
+                    int slotMinutes = slotAvailabilityService.requireBookableSlot(doctor, newDate);
+                    LocalDateTime oldDate = existingAppointment.getAppointmentDate();
+                    Appointment saved = book(doctor.getDoctorId(), newDate, slotMinutes, () -> {
+                        existingAppointment.setAppointmentDate(newDate);
+                        return appointmentRepository.saveAndFlush(existingAppointment);
+                    });
+                    // Перенос освобождает старый день и занимает новый
+                    slotAvailabilityService.invalidate(doctor.getDoctorId(), oldDate);
+                    invalidateSlots(saved);
+                    return saved;
                 })
                 .orElseThrow(() -> new RuntimeException("Қабылдау табылмады id: " + id));
     }
@@ -99,16 +130,35 @@ public class AppointmentService {
     public Appointment updateStatus(Long id, String status) {
         return appointmentRepository.findById(Math.toIntExact(id))
                 .map(appointment -> {
-                    appointment.setStatus(status);
-                    return appointmentRepository.save(appointment);
+                    Appointment saved;
+                    if (isCancelled(appointment.getStatus()) && !isCancelled(status)) {
+                        // Возврат отменённой записи снова занимает слот: та же проверка и блокировка, что и при создании
+                        Doctor doctor = appointment.getDoctor();
+                        saved = book(doctor.getDoctorId(), appointment.getAppointmentDate(),
+                                slotAvailabilityService.slotMinutesOf(doctor), () -> {
+                                    appointment.setStatus(status);
+                                    return appointmentRepository.saveAndFlush(appointment);
+                                });
+                    } else {
+                        appointment.setStatus(status);
+                        saved = appointmentRepository.save(appointment);
+                    }
+                    invalidateSlots(saved);
+                    return saved;
                 })
                 .orElseThrow(() -> new RuntimeException("Қабылдау табылмады id: " + id));
     }
 
+    private static boolean isCancelled(String status) {
+        return status != null && status.equalsIgnoreCase("cancelled");
+    }
+
     @Transactional
     public boolean delete(Long id) {
-        if (appointmentRepository.existsById(Math.toIntExact(id))) {
+        Optional<Appointment> appointment = appointmentRepository.findById(Math.toIntExact(id));
+        if (appointment.isPresent()) {
             appointmentRepository.deleteById(Math.toIntExact(id));
+            invalidateSlots(appointment.get());
             return true;
         }
         return false;
@@ -119,7 +169,9 @@ public class AppointmentService {
         return appointmentRepository.findById(Math.toIntExact(id))
                 .map(appointment -> {
                     appointment.setStatus("CANCELLED");
-                    return appointmentRepository.save(appointment);
+                    Appointment saved = appointmentRepository.save(appointment);
+                    invalidateSlots(saved);
+                    return saved;
                 })
                 .orElseThrow(() -> new RuntimeException("Қабылдау табылмады id: " + id));
     }
@@ -131,22 +183,108 @@ public class AppointmentService {
     }
 
     public List<Appointment> findByDate(String date) {
-        return appointmentRepository.findByAppointmentDate(date);
+        // Сутки как [00:00, 00:00 следующего дня): условие по самой колонке, без DATE()
+        LocalDateTime from = LocalDate.parse(date).atStartOfDay();
+        return appointmentRepository.findByAppointmentDateRange(from, from.plusDays(1));
     }
 
+    /**
+     * Можно ли записаться к врачу на date + time (формат YYYY-MM-DD и HH:mm) — по тем же правилам, что и create
+     */
     public boolean isTimeSlotAvailable(Integer doctorId, String date, String time) {
-        List<Appointment> existingAppointments = appointmentRepository
-                .findByDoctorIdAndAppointmentDateAndAppointmentTimeAndStatusNot(
-                        doctorId, date, time, "CANCELLED"
-                );
-        return existingAppointments.isEmpty();
+        // То же правило, что и при создании записи: проверка сетки врача и пересечение со слотом
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new IllegalArgumentException("Doctor not found"));
+        LocalDateTime start = LocalDate.parse(date).atTime(LocalTime.parse(time)).truncatedTo(ChronoUnit.MINUTES);
+        int slotMinutes = slotAvailabilityService.requireBookableSlot(doctor, start);
+        return isSlotFree(doctorId, start, slotMinutes);
+    }
+
+    /**
+     * Нет ли у врача неотменённых записей в [from, to)
+     */
+    public boolean isDoctorFree(Integer doctorId, LocalDateTime from, LocalDateTime to) {
+        return !appointmentRepository.existsActiveByDoctorIdInRange(doctorId, from, to, "cancelled");
+    }
+
+    /**
+     * Запись на слот врача [start, start + slotMinutes). Внутри процесса записи к одному врачу
+     * сериализуются полосатой блокировкой, между процессами гонку отсекает уникальный индекс
+     * uk_appointments_doctor_slot (точное время начала; для врачей без сетки пересечения между
+     * процессами ловит только проверка под блокировкой). Временные сбои конкурентного доступа (взаимоблокировка,
+     * таймаут блокировки) повторяются; занятый слот — IllegalStateException
+     */
+    private Appointment book(Integer doctorId, LocalDateTime start, int slotMinutes, Supplier<Appointment> insert) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return bookingLocks.withDoctorLock(doctorId, () -> {
+                    if (!isSlotFree(doctorId, start, slotMinutes)) {
+                        throw new IllegalStateException(SLOT_TAKEN);
+                    }
+                    try {
+                        return insert.get();
+                    } catch (DataIntegrityViolationException e) {
+                        if (isSlotConflict(e)) {
+                            throw new IllegalStateException(SLOT_TAKEN);
+                        }
+                        throw e;
+                    }
+                });
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= bookingMaxAttempts) {
+                    throw e;
+                }
+                log.warn("Повтор записи к врачу {} на {} (попытка {}): {}", doctorId, start, attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * Нет ли активной записи, пересекающей [start, start + slotMinutes) — каждая запись длится один слот
+     */
+    private boolean isSlotFree(Integer doctorId, LocalDateTime start, int slotMinutes) {
+        return isDoctorFree(doctorId, start.minusMinutes(slotMinutes - 1L), start.plusMinutes(slotMinutes));
+    }
+
+    private static boolean isSlotConflict(DataIntegrityViolationException e) {
+        String message = e.getMostSpecificCause().getMessage();
+        return message != null && message.contains(SLOT_UNIQUE_INDEX);
+    }
+
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(10, 50) * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while retrying booking", e);
+        }
+    }
+
+    private void invalidateSlots(Appointment appointment) {
+        if (appointment.getDoctor() != null) {
+            slotAvailabilityService.invalidate(appointment.getDoctor().getDoctorId(), appointment.getAppointmentDate());
+        }
     }
 
     public AppointmentStatistics getStatistics() {
-        long total = appointmentRepository.count();
-        long scheduled = appointmentRepository.countByStatus("SCHEDULED");
-        long completed = appointmentRepository.countByStatus("COMPLETED");
-        long cancelled = appointmentRepository.countByStatus("CANCELLED");
+        // Один GROUP BY вместо четырёх COUNT; статусы пишутся в разном регистре — сравниваем без него
+        long total = 0;
+        long scheduled = 0;
+        long completed = 0;
+        long cancelled = 0;
+        for (Object[] row : appointmentRepository.countGroupByStatus()) {
+            String status = (String) row[0];
+            long count = ((Number) row[1]).longValue();
+            total += count;
+            if ("scheduled".equals(status)) {
+                scheduled = count;
+            } else if ("completed".equals(status)) {
+                completed = count;
+            } else if ("cancelled".equals(status)) {
+                cancelled = count;
+            }
+        }
 
         return new AppointmentStatistics(total, scheduled, completed, cancelled);
     }
@@ -5,9 +5,10 @@ import com.example.MedSafe.repository.*;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.KeyFactory;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -26,7 +27,9 @@ public class AuthService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final SecurityKeyRepository securityKeyRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final KeyLoginChallengeService keyLoginChallengeService;
+    private final RsaKeyCache rsaKeyCache;
     private final PatientRepository patientRepository;
     private final DoctorRepository doctorRepository;
     private final CallService callService;
@@ -60,7 +63,7 @@ public class AuthService {
         // Создаем основного пользователя
         User user = new User();
         user.setUsername(username);
-        user.setPasswordHash(passwordEncoder.encode(password));
+        user.setPasswordHash(passwordHashingService.encode(password));
         user.setEmail(email);
         user.setFirstName(firstName);
         user.setLastName(lastName);
@@ -125,11 +128,23 @@ public class AuthService {
                     return new RuntimeException("User not found");
                 });
 
-        if (!passwordEncoder.matches(password, user.getPasswordHash())) {
+        if (!passwordHashingService.matches(password, user.getPasswordHash())) {
             logger.error("Неверные учетные данные для пользователя {}", username);
             throw new RuntimeException("Invalid credentials");
         }
 
+        // Пароль известен только сейчас — пересчитываем хеш, если настроенная стоимость выросла
+        if (passwordHashingService.needsRehash(user.getPasswordHash())) {
+            try {
+                String passwordHash = passwordHashingService.encode(password);
+                userRepository.updatePasswordHash(user.getUserId(), passwordHash);
+                user.setPasswordHash(passwordHash);
+                logger.info("Хеш пароля пересчитан: userId={}", user.getUserId());
+            } catch (Exception e) {
+                logger.warn("Не удалось пересчитать хеш пароля userId={}: {}", user.getUserId(), e.getMessage());
+            }
+        }
+
         try {
             markUserAsOnline(user);
         } catch (Exception e) {
@@ -140,6 +155,62 @@ public class AuthService {
         return user;
     }
 
+    /**
+     * Первый шаг входа по ключу: строка, которую клиент подписывает SHA256withRSA своим приватным ключом
+     */
+    public String issueKeyLoginChallenge(String username) {
+        if (username == null || username.isBlank()) {
+            throw new IllegalArgumentException("Username is required");
+        }
+        return keyLoginChallengeService.issue(username);
+    }
+
+    /**
+     * Второй шаг: проверка подписи challenge публичным ключом пользователя (из кэша разобранных ключей)
+     */
+    public User loginWithSignature(String username, String challenge, String signature) {
+        logger.info("Попытка входа по подписи: username={}", username);
+        if (!keyLoginChallengeService.consume(username, challenge)) {
+            logger.error("Недействительный challenge для пользователя {}", username);
+            throw new RuntimeException("Challenge expired or invalid");
+        }
+
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("Invalid signature"));
+        SecurityKey securityKey = securityKeyRepository.findByUserUserId(user.getUserId())
+                .orElseThrow(() -> new RuntimeException("Security key not found"));
+
+        try {
+            PublicKey publicKey = rsaKeyCache.getPublicKey(user.getUserId(), securityKey.getPublicKey());
+            Signature verifier = Signature.getInstance("SHA256withRSA");
+            verifier.initVerify(publicKey);
+            verifier.update(challenge.getBytes(StandardCharsets.UTF_8));
+            if (!verifier.verify(Base64.getDecoder().decode(signature))) {
+                throw new RuntimeException("Invalid signature");
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            logger.error("Ошибка проверки подписи для пользователя {}: {}", username, e.getMessage());
+            throw new RuntimeException("Invalid signature");
+        } catch (RuntimeException e) {
+            logger.error("Неверная подпись для пользователя {}", username);
+            throw e;
+        }
+
+        try {
+            markUserAsOnline(user);
+        } catch (Exception e) {
+            logger.warn("Не удалось установить онлайн-статус при входе по подписи: {}", e.getMessage());
+        }
+
+        logger.info("Успешный вход по подписи: userId={}", user.getUserId());
+        return user;
+    }
+
+    /**
+     * Вход с передачей приватного ключа на сервер. Оставлен для старых клиентов,
+     * новым следует использовать challenge + подпись (issueKeyLoginChallenge / loginWithSignature)
+     */
+    @Deprecated
     public User loginWithPrivateKey(String username, String privateKey) throws Exception {
         logger.info("Попытка входа по приватному ключу: username={}", username);
         User user = userRepository.findByUsername(username)
@@ -210,11 +281,9 @@ public class AuthService {
             String userId = user.getUserId().toString();
             String sessionId = "auth-session-" + userId + "-" + UUID.randomUUID().toString().substring(0, 8);
 
+            // Запись в users.online сделает PresenceService при ближайшем сбросе
             callService.registerUser(userId, sessionId);
 
-            user.setOnline(true);
-            userRepository.save(user);
-
             logger.info("Пользователь {} помечен как онлайн через AuthService", userId);
 
         } catch (Exception e) {
@@ -225,18 +294,10 @@ public class AuthService {
 
     public void logoutUser(Integer userId) {
         try {
-            String userIdStr = userId.toString();
-
-            callService.unregisterUser(userIdStr);
-
-            userRepository.findById(userId).ifPresent(user -> {
-                user.setOnline(false);
-                userRepository.save(user);
-                logger.info("Пользователь {} помечен как офлайн", userId);
-            });
-
+            callService.unregisterUser(userId.toString());
+            logger.info("Пользователь {} помечен как офлайн", userId);
         } catch (Exception e) {
             logger.warn("Ошибка при выходе пользователя {}: {}", userId, e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
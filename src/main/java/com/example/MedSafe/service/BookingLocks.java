@@ -0,0 +1,55 @@
+package com.example.MedSafe.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Полосатые блокировки по врачу: записи к одному врачу в этом процессе идут по очереди,
+ * к разным врачам — параллельно. Между экземплярами приложения гонку закрывает уникальный индекс
+ */
+@Component
+public class BookingLocks {
+
+    @Value("${appointments.booking.lock-stripes:64}")
+    private int stripeCount;
+
+    // Дольше не ждём: лучше ответить «занято, повторите», чем копить потоки
+    @Value("${appointments.booking.lock-timeout:PT2S}")
+    private Duration lockTimeout;
+
+    private ReentrantLock[] stripes;
+
+    @PostConstruct
+    void init() {
+        stripes = new ReentrantLock[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Выполняет action под блокировкой полосы врача
+     */
+    public <T> T withDoctorLock(Integer doctorId, Supplier<T> action) {
+        ReentrantLock lock = stripes[Math.floorMod(doctorId.hashCode(), stripes.length)];
+        try {
+            if (!lock.tryLock(lockTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Doctor's calendar is busy, try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for booking lock", e);
+        }
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
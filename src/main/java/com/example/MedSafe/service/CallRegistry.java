@@ -0,0 +1,131 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.dto.CallRequest;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Активные звонки: индекс по callId и по каждому участнику (у пользователя не больше одного звонка).
+ * Переходы RINGING -> ACCEPTED -> ENDED атомарные: при одновременном accept и reject выигрывает один
+ */
+@Component
+public class CallRegistry {
+
+    public enum State {
+        RINGING,
+        ACCEPTED,
+        ENDED
+    }
+
+    private final Map<String, ActiveCall> callsById = new ConcurrentHashMap<>();
+
+    // userId -> callId, для звонящего и для вызываемого
+    private final Map<String, String> callIdsByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Регистрирует новый звонок; бросает IllegalStateException, если кто-то из участников уже разговаривает
+     * или звонок с таким callId уже есть
+     */
+    public ActiveCall register(CallRequest request) {
+        String callId = request.getCallId();
+        String callerId = request.getCallerId();
+        String targetId = request.getTargetId();
+
+        if (callIdsByUser.putIfAbsent(callerId, callId) != null) {
+            throw new IllegalStateException("User " + callerId + " already has an active call");
+        }
+        if (callIdsByUser.putIfAbsent(targetId, callId) != null) {
+            callIdsByUser.remove(callerId, callId);
+            throw new IllegalStateException("User " + targetId + " is busy");
+        }
+
+        ActiveCall call = new ActiveCall(request);
+        // Повторный callId не должен затирать чужой звонок
+        if (callsById.putIfAbsent(callId, call) != null) {
+            callIdsByUser.remove(callerId, callId);
+            callIdsByUser.remove(targetId, callId);
+            throw new IllegalStateException("Call " + callId + " already exists");
+        }
+        return call;
+    }
+
+    public ActiveCall get(String callId) {
+        return callId != null ? callsById.get(callId) : null;
+    }
+
+    public ActiveCall findByUser(String userId) {
+        String callId = userId != null ? callIdsByUser.get(userId) : null;
+        return get(callId);
+    }
+
+    public boolean hasActiveCall(String userId) {
+        return callIdsByUser.containsKey(userId);
+    }
+
+    /**
+     * Атомарный переход из одного из состояний from в to. Звонок, перешедший в ENDED,
+     * сразу убирается из индексов
+     */
+    public boolean transition(ActiveCall call, State to, State... from) {
+        for (State expected : from) {
+            if (call.state.compareAndSet(expected, to)) {
+                if (to == State.ENDED) {
+                    remove(call);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void remove(ActiveCall call) {
+        CallRequest request = call.getRequest();
+        callsById.remove(request.getCallId(), call);
+        callIdsByUser.remove(request.getCallerId(), request.getCallId());
+        callIdsByUser.remove(request.getTargetId(), request.getCallId());
+
+        ScheduledFuture<?> timeout = call.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    @Getter
+    public static class ActiveCall {
+        private final CallRequest request;
+        private final AtomicReference<State> state = new AtomicReference<>(State.RINGING);
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long acceptedAt;
+        private volatile String roomId;
+        private volatile ScheduledFuture<?> timeout;
+
+        ActiveCall(CallRequest request) {
+            this.request = request;
+        }
+
+        public State getState() {
+            return state.get();
+        }
+
+        void accepted(String roomId) {
+            this.roomId = roomId;
+            this.acceptedAt = System.currentTimeMillis();
+        }
+
+        void setTimeout(ScheduledFuture<?> timeout) {
+            this.timeout = timeout;
+        }
+
+        void cancelTimeout() {
+            ScheduledFuture<?> current = timeout;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
+}
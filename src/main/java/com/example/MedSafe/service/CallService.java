@@ -5,16 +5,18 @@ import com.example.MedSafe.model.dto.CallRequest;
 import com.example.MedSafe.model.dto.CallResponse;
 import com.example.MedSafe.model.dto.CallNotification;
 import com.example.MedSafe.model.dto.WebRTCMessage;
-import com.example.MedSafe.model.User;
 import com.example.MedSafe.repository.CallHistoryRepository;
-import com.example.MedSafe.repository.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.UUID;
 
 @Service
@@ -22,52 +24,46 @@ import java.util.UUID;
 public class CallService {
 
     @Autowired
-    private UserRepository userRepository;
+    private PresenceService presenceService;
     @Autowired
     private CallHistoryRepository callHistoryRepository;
+    @Autowired
+    private CallRegistry callRegistry;
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+    @Autowired
+    @Qualifier("taskScheduler")
+    private TaskScheduler taskScheduler;
 
-    // Храним активные соединения пользователей: userId -> sessionId
-    private final Map<String, String> activeUsers = new ConcurrentHashMap<>();
-
-    // Храним активные звонки: callId -> информация о звонке
-    private final Map<String, CallRequest> activeCalls = new ConcurrentHashMap<>();
-
-    // Храним комнаты WebRTC: callId -> roomId
-    private final Map<String, String> callRooms = new ConcurrentHashMap<>();
+    // Сколько звонок может звонить без ответа, потом он считается пропущенным
+    @Value("${call.ring-timeout:PT45S}")
+    private Duration ringTimeout;
 
     /**
      * Регистрация пользователя в системе звонков
      */
     public void registerUser(String userId, String sessionId) {
-        activeUsers.put(userId, sessionId);
+        presenceService.connect(Integer.valueOf(userId), sessionId);
         log.info("User {} registered with session {}", userId, sessionId);
-
-        // Обновляем статус пользователя в БД
-        userRepository.findById(Integer.valueOf(userId)).ifPresent(user -> {
-            user.setOnline(true);
-            userRepository.save(user);
-        });
     }
 
     /**
      * Отключение пользователя
      */
     public void unregisterUser(String userId) {
-        activeUsers.remove(userId);
+        presenceService.disconnect(Integer.valueOf(userId), null);
         log.info("User {} disconnected", userId);
+    }
 
-        // Обновляем статус в БД
-        userRepository.findById(Integer.valueOf(userId)).ifPresent(user -> {
-            user.setOnline(false);
-            userRepository.save(user);
-        });
+    public void heartbeat(String userId) {
+        presenceService.heartbeat(Integer.valueOf(userId));
     }
 
     /**
      * Проверка онлайн статуса пользователя
      */
     public boolean isUserOnline(String userId) {
-        return activeUsers.containsKey(userId);
+        return presenceService.isOnline(Integer.valueOf(userId));
     }
 
     /**
@@ -76,28 +72,29 @@ public class CallService {
     public boolean isDoctorAvailable(Long doctorId) {
         String doctorIdStr = doctorId.toString();
 
-        // Проверяем в активных пользователях
-        if (!activeUsers.containsKey(doctorIdStr)) {
-            return false;
-        }
-
-        // Проверяем, не занят ли доктор другим звонком
-        return activeCalls.values().stream()
-                .noneMatch(call -> call.getTargetId().equals(doctorIdStr) &&
-                        call.getTimestamp() > System.currentTimeMillis() - 300000); // 5 минут
+        // Онлайн и не занят другим звонком
+        return isUserOnline(doctorIdStr) && !callRegistry.hasActiveCall(doctorIdStr);
     }
 
     /**
-     * Инициирование звонка
+     * Инициирование звонка. Бросает IllegalStateException, если кто-то из участников уже в звонке
      */
     public CallNotification initiateCall(CallRequest request) {
         // Генерируем ID звонка если не предоставлен
         if (request.getCallId() == null || request.getCallId().isEmpty()) {
             request.setCallId(UUID.randomUUID().toString());
         }
+        if (request.getTimestamp() == null) {
+            request.setTimestamp(System.currentTimeMillis());
+        }
 
         // Сохраняем информацию о звонке
-        activeCalls.put(request.getCallId(), request);
+        CallRegistry.ActiveCall call = callRegistry.register(request);
+
+        // Без ответа звонок станет пропущенным
+        call.setTimeout(taskScheduler.schedule(
+                () -> expireCall(request.getCallId()),
+                Instant.now().plus(ringTimeout)));
 
         // Создаем уведомление для получателя
         return CallNotification.builder()
@@ -114,15 +111,16 @@ public class CallService {
      * Принятие звонка
      */
     public CallResponse acceptCall(String callId, String doctorId, String doctorName) {
-        CallRequest callRequest = activeCalls.get(callId);
-        if (callRequest == null) {
-            throw new IllegalArgumentException("Call not found: " + callId);
+        CallRegistry.ActiveCall call = requireCall(callId);
+        if (!callRegistry.transition(call, CallRegistry.State.ACCEPTED, CallRegistry.State.RINGING)) {
+            throw new IllegalStateException("Call " + callId + " is no longer ringing");
         }
+        call.cancelTimeout();
 
         // Создаем комнату для WebRTC
-        String roomId = "medsafe-call-" + callId;
-        callRooms.put(callId, roomId);
+        call.accepted("medsafe-call-" + callId);
 
+        CallRequest callRequest = call.getRequest();
         // Создаем ответ
         return CallResponse.builder()
                 .callId(callId)
@@ -139,18 +137,22 @@ public class CallService {
      * Отклонение звонка
      */
     public CallResponse rejectCall(String callId, String reason) {
-        CallRequest callRequest = activeCalls.remove(callId);
-        if (callRequest == null) {
-            throw new IllegalArgumentException("Call not found: " + callId);
+        CallRegistry.ActiveCall call = requireCall(callId);
+        if (!callRegistry.transition(call, CallRegistry.State.ENDED, CallRegistry.State.RINGING)) {
+            throw new IllegalStateException("Call " + callId + " is no longer ringing");
         }
 
+        CallRequest callRequest = call.getRequest();
         // Сохраняем в историю
-        saveCallToHistory(callRequest, "REJECTED", reason);
+        saveCallToHistory(call, "REJECTED", reason);
 
         return CallResponse.builder()
                 .callId(callId)
                 .status("rejected")
                 .reason(reason)
+                .doctorId(callRequest.getTargetId())
+                .patientId(callRequest.getCallerId())
+                .patientName(callRequest.getCallerName())
                 .timestamp(System.currentTimeMillis())
                 .build();
     }
@@ -159,10 +161,10 @@ public class CallService {
      * Завершение звонка
      */
     public CallResponse endCall(String callId, String endedById) {
-        CallRequest callRequest = activeCalls.remove(callId);
-        callRooms.remove(callId);
+        CallRegistry.ActiveCall call = callRegistry.get(callId);
 
-        if (callRequest == null) {
+        if (call == null || !callRegistry.transition(call, CallRegistry.State.ENDED,
+                CallRegistry.State.ACCEPTED, CallRegistry.State.RINGING)) {
             // Может быть уже завершен
             return CallResponse.builder()
                     .callId(callId)
@@ -171,16 +173,18 @@ public class CallService {
                     .build();
         }
 
+        CallRequest callRequest = call.getRequest();
         // Определяем кто завершил
         String status = callRequest.getCallerId().equals(endedById) ?
                 "ENDED_BY_CALLER" : "ENDED_BY_RECEIVER";
 
         // Сохраняем в историю
-        saveCallToHistory(callRequest, status, "Call ended normally");
+        saveCallToHistory(call, status, "Call ended normally");
 
         return CallResponse.builder()
                 .callId(callId)
                 .status("ended")
+                .doctorId(callRequest.getTargetId())
                 .patientId(callRequest.getCallerId())
                 .patientName(callRequest.getCallerName())
                 .timestamp(System.currentTimeMillis())
@@ -191,23 +195,31 @@ public class CallService {
      * Получение информации о комнате WebRTC
      */
     public String getCallRoom(String callId) {
-        return callRooms.get(callId);
+        CallRegistry.ActiveCall call = callRegistry.get(callId);
+        return call != null ? call.getRoomId() : null;
     }
 
     /**
      * Получение активного звонка пользователя
      */
     public CallRequest getActiveCallForUser(String userId) {
-        return activeCalls.values().stream()
-                .filter(call -> call.getCallerId().equals(userId) || call.getTargetId().equals(userId))
-                .findFirst()
-                .orElse(null);
+        CallRegistry.ActiveCall call = callRegistry.findByUser(userId);
+        return call != null ? call.getRequest() : null;
+    }
+
+    private CallRegistry.ActiveCall requireCall(String callId) {
+        CallRegistry.ActiveCall call = callRegistry.get(callId);
+        if (call == null) {
+            throw new IllegalArgumentException("Call not found: " + callId);
+        }
+        return call;
     }
 
     /**
      * Сохранение звонка в историю
      */
-    private void saveCallToHistory(CallRequest callRequest, String status, String notes) {
+    private void saveCallToHistory(CallRegistry.ActiveCall call, String status, String notes) {
+        CallRequest callRequest = call.getRequest();
         try {
             CallHistory callHistory = new CallHistory();
             callHistory.setCallId(callRequest.getCallId());
@@ -215,7 +227,9 @@ public class CallService {
             callHistory.setReceiverId(Long.parseLong(callRequest.getTargetId()));
             callHistory.setCallType(callRequest.getCallerType());
             callHistory.setStatus(status);
-            callHistory.setDuration(0L); // Можно рассчитать по timestamp
+            // Длительность разговора в секундах, считаем с момента принятия
+            long acceptedAt = call.getAcceptedAt();
+            callHistory.setDuration(acceptedAt > 0 ? (System.currentTimeMillis() - acceptedAt) / 1000 : 0L);
             callHistory.setNotes(notes);
             callHistory.setCreatedAt(LocalDateTime.now());
 
@@ -228,14 +242,17 @@ public class CallService {
     }
 
     /**
-     * Обработка пропущенного звонка
+     * Обработка пропущенного звонка. null — звонок уже принят или завершен
      */
     public CallNotification markCallAsMissed(String callId) {
-        CallRequest callRequest = activeCalls.remove(callId);
-        if (callRequest == null) return null;
+        CallRegistry.ActiveCall call = callRegistry.get(callId);
+        if (call == null || !callRegistry.transition(call, CallRegistry.State.ENDED, CallRegistry.State.RINGING)) {
+            return null;
+        }
 
+        CallRequest callRequest = call.getRequest();
         // Сохраняем в историю как пропущенный
-        saveCallToHistory(callRequest, "MISSED", "Call was missed");
+        saveCallToHistory(call, "MISSED", "Call was missed");
 
         return CallNotification.builder()
                 .callId(callId)
@@ -247,4 +264,28 @@ public class CallService {
                 .build();
     }
 
+    /**
+     * Никто не ответил за ring-timeout: уведомляем обе стороны
+     */
+    private void expireCall(String callId) {
+        CallRegistry.ActiveCall call = callRegistry.get(callId);
+        CallNotification missedCall = markCallAsMissed(callId);
+        if (call == null || missedCall == null) {
+            return;
+        }
+
+        CallRequest callRequest = call.getRequest();
+        log.info("Call {} was not answered in {}", callId, ringTimeout);
+
+        messagingTemplate.convertAndSendToUser(callRequest.getTargetId(), "/queue/call", missedCall);
+        messagingTemplate.convertAndSendToUser(callRequest.getCallerId(), "/queue/call-response",
+                CallResponse.builder()
+                        .callId(callId)
+                        .status("missed")
+                        .doctorId(callRequest.getTargetId())
+                        .patientId(callRequest.getCallerId())
+                        .timestamp(System.currentTimeMillis())
+                        .build());
+    }
+
 }
@@ -0,0 +1,98 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.dto.MessageResponse;
+import com.example.MedSafe.model.ChatParticipant;
+import com.example.MedSafe.model.dto.ChatEvent;
+import com.example.MedSafe.repository.ChatParticipantRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Рассылка событий чата участникам через STOMP (/user/queue/...),
+ * чтобы клиентам не нужно было опрашивать REST
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatNotificationService {
+
+    public static final String MESSAGES_DESTINATION = "/queue/messages";
+    public static final String TYPING_DESTINATION = "/queue/typing";
+    public static final String READ_DESTINATION = "/queue/read-receipts";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatParticipantRepository chatParticipantRepository;
+
+    /**
+     * Новое сообщение — всем участникам, кроме отправителя
+     */
+    public void notifyNewMessage(Long chatId, Integer senderId, MessageResponse message) {
+        sendToOthers(chatId, senderId, MESSAGES_DESTINATION, message);
+    }
+
+    /**
+     * Пользователь прочитал чат
+     */
+    public void notifyRead(Long chatId, Integer readerId, LocalDateTime readAt) {
+        ChatEvent event = ChatEvent.builder()
+                .type("read")
+                .chatId(chatId)
+                .userId(readerId)
+                .readAt(readAt)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        sendToOthers(chatId, readerId, READ_DESTINATION, event);
+    }
+
+    /**
+     * Пользователь печатает / перестал печатать
+     */
+    public void notifyTyping(Long chatId, Integer userId, boolean typing) {
+        ChatEvent event = ChatEvent.builder()
+                .type("typing")
+                .chatId(chatId)
+                .userId(userId)
+                .typing(typing)
+                .timestamp(System.currentTimeMillis())
+                .build();
+        sendToOthers(chatId, userId, TYPING_DESTINATION, event);
+    }
+
+    private void sendToOthers(Long chatId, Integer excludedUserId, String destination, Object payload) {
+        // Principal в STOMP-сессии — username из JWT (см. WebSocketConfig)
+        List<String> recipients = chatParticipantRepository.findAllByChatId(chatId).stream()
+                .map(ChatParticipant::getUser)
+                .filter(user -> !user.getUserId().equals(excludedUserId))
+                .map(user -> user.getUsername())
+                .toList();
+
+        // Отправляем только после коммита, чтобы клиент не увидел несохранённые данные
+        runAfterCommit(() -> recipients.forEach(username -> {
+            try {
+                messagingTemplate.convertAndSendToUser(username, destination, payload);
+            } catch (Exception e) {
+                log.warn("Failed to push {} to user {}: {}", destination, username, e.getMessage());
+            }
+        }));
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -3,14 +3,13 @@ package com.example.MedSafe.service;
 import com.example.MedSafe.dto.ChatResponse;
 import com.example.MedSafe.model.Chat;
 import com.example.MedSafe.model.ChatParticipant;
-import com.example.MedSafe.model.Message;
 import com.example.MedSafe.model.User;
+import com.example.MedSafe.model.dto.ChatSummary;
 import com.example.MedSafe.model.dto.CreateChatRequest;
 import com.example.MedSafe.repository.ChatParticipantRepository;
 import com.example.MedSafe.repository.ChatRepository;
 import com.example.MedSafe.repository.MessageRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,13 +26,14 @@ public class ChatService {
     private final ChatParticipantRepository chatParticipantRepository;
     private final MessageRepository messageRepository;
     private final UserService userService;
+    private final ChatNotificationService chatNotificationService;
+    private final PresenceService presenceService;
 
     @Transactional(readOnly = true)
     public List<ChatResponse> getUserChats(Integer userId) {
-        List<Chat> chats = chatRepository.findAllByUserId(userId);
-
-        return chats.stream()
-                .map(chat -> buildChatResponse(chat, userId))
+        // Один запрос вместо трёх на каждый чат
+        return chatRepository.findChatSummaries(userId).stream()
+                .map(this::buildChatResponse)
                 .collect(Collectors.toList());
     }
 
@@ -43,7 +43,7 @@ public class ChatService {
         var existingChat = chatRepository.findPrivateChatBetweenUsers(currentUserId, request.getParticipantId());
 
         if (existingChat.isPresent()) {
-            return buildChatResponse(existingChat.get(), currentUserId);
+            return buildChatResponse(existingChat.get().getChatId(), currentUserId);
         }
 
         // Создаем новый чат
@@ -72,85 +72,74 @@ public class ChatService {
         chatParticipantRepository.save(participant1);
         chatParticipantRepository.save(participant2);
 
-        return buildChatResponse(chat, currentUserId);
+        return buildChatResponse(chat.getChatId(), currentUserId);
     }
 
     @Transactional
     public void markAsRead(Long chatId, Integer userId) {
-        ChatParticipant participant = chatParticipantRepository
-                .findByChatIdAndUserId(chatId, userId)
-                .orElseThrow(() -> new RuntimeException("Participant not found"));
-
         LocalDateTime now = LocalDateTime.now();
-        participant.setLastReadAt(now);
-        chatParticipantRepository.save(participant);
+
+        // Сбрасываем счётчик непрочитанных и время прочтения одним UPDATE
+        int updated = chatParticipantRepository.resetUnreadCount(chatId, userId, now);
+        if (updated == 0) {
+            throw new RuntimeException("Participant not found");
+        }
 
         // Отмечаем все сообщения как прочитанные
         messageRepository.markMessagesAsRead(chatId, userId, now);
+
+        // Уведомление о прочтении собеседнику
+        chatNotificationService.notifyRead(chatId, userId, now);
     }
 
-    private ChatResponse buildChatResponse(Chat chat, Integer currentUserId) {
-        // Находим другого участника
-        ChatParticipant otherParticipant = chatParticipantRepository
-                .findOtherParticipant(chat.getChatId(), currentUserId)
-                .orElse(null);
-
-        // Получаем последнее сообщение
-        List<Message> lastMessages = messageRepository.findLastMessageByChatId(
-                chat.getChatId(),
-                PageRequest.of(0, 1)
-        );
-
-        String lastMessage = null;
-        LocalDateTime lastMessageAt = chat.getUpdatedAt();
-
-        if (!lastMessages.isEmpty()) {
-            Message msg = lastMessages.get(0);
-            lastMessage = msg.getContent();
-            lastMessageAt = msg.getCreatedAt();
-        }
+    @Transactional(readOnly = true)
+    public long getTotalUnreadCount(Integer userId) {
+        return chatParticipantRepository.sumUnreadCountByUserId(userId);
+    }
 
-        // Подсчитываем непрочитанные сообщения
-        ChatParticipant currentParticipant = chatParticipantRepository
-                .findByChatIdAndUserId(chat.getChatId(), currentUserId)
-                .orElse(null);
-
-        Integer unreadCount = 0;
-        if (currentParticipant != null) {
-            LocalDateTime lastReadAt = currentParticipant.getLastReadAt() != null
-                    ? currentParticipant.getLastReadAt()
-                    : LocalDateTime.of(1970, 1, 1, 0, 0);
-            unreadCount = messageRepository.countUnreadMessages(
-                    chat.getChatId(),
-                    currentUserId,
-                    lastReadAt
-            );
-        }
+    /**
+     * Участник чата по username из STOMP-сессии; бросает исключение, если пользователь не в чате
+     */
+    @Transactional(readOnly = true)
+    public ChatParticipant getParticipant(Long chatId, String username) {
+        return chatParticipantRepository.findByChatIdAndUsername(chatId, username)
+                .orElseThrow(() -> new RuntimeException("Participant not found"));
+    }
+
+    private ChatResponse buildChatResponse(Long chatId, Integer currentUserId) {
+        ChatSummary summary = chatRepository.findChatSummary(currentUserId, chatId)
+                .orElseThrow(() -> new RuntimeException("Chat not found"));
+        return buildChatResponse(summary);
+    }
 
+    private ChatResponse buildChatResponse(ChatSummary summary) {
         // Формируем информацию об участнике
         ChatResponse.ParticipantInfo participantInfo = null;
-        if (otherParticipant != null) {
-            User otherUser = otherParticipant.getUser();
+        if (summary.getParticipantId() != null) {
             participantInfo = ChatResponse.ParticipantInfo.builder()
-                    .id(otherUser.getUserId())
-                    .name(otherUser.getFirstName() + " " + otherUser.getLastName())
-                    .specialty(getDoctorSpecialty(otherUser))
-                    .online(otherUser.getOnline() != null ? otherUser.getOnline() : false)
-                    .email(otherUser.getEmail())
+                    .id(summary.getParticipantId())
+                    .name(summary.getParticipantFirstName() + " " + summary.getParticipantLastName())
+                    .specialty(getDoctorSpecialty(summary.getParticipantId()))
+                    .online(presenceService.isOnline(summary.getParticipantId()))
+                    .email(summary.getParticipantEmail())
                     .build();
         }
 
+        LocalDateTime lastMessageAt = summary.getLastMessageAt() != null
+                ? summary.getLastMessageAt()
+                : summary.getUpdatedAt();
+
         return ChatResponse.builder()
-                .id(chat.getChatId())
+                .id(summary.getChatId())
                 .participant(participantInfo)
-                .lastMessage(lastMessage)
+                .lastMessage(summary.getLastMessage())
                 .lastMessageAt(lastMessageAt)
-                .createdAt(chat.getCreatedAt())
-                .unreadCount(unreadCount)
+                .createdAt(summary.getCreatedAt())
+                .unreadCount(summary.getUnreadCount() != null ? summary.getUnreadCount().intValue() : 0)
                 .build();
     }
 
-    private String getDoctorSpecialty(User user) {
+    private String getDoctorSpecialty(Integer userId) {
         // Здесь нужно получить специальность врача из таблицы doctor
         // Если у вас есть связь между User и Doctor, используйте её
         // Пока возвращаем заглушку
@@ -0,0 +1,92 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.dto.DoctorStatistic;
+import com.example.MedSafe.repository.DiagnosisRepository;
+import com.example.MedSafe.repository.DoctorRepository;
+import com.example.MedSafe.repository.PatientRepository;
+import com.example.MedSafe.repository.TestRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Статистика дашборда: агрегаты считаются в БД (COUNT и GROUP BY по врачу) и раз в
+ * dashboard.refresh-interval собираются в готовый снимок, который отдаётся без запросов
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DashboardStatisticsService {
+
+    private static final int TOP_DOCTORS = 5;
+
+    private final PatientRepository patientRepository;
+    private final DiagnosisRepository diagnosisRepository;
+    private final TestRepository testRepository;
+    private final DoctorRepository doctorRepository;
+
+    // Неизменяемый снимок; заменяется целиком при обновлении
+    private volatile Map<String, Object> snapshot;
+
+    /**
+     * Последний снимок статистики. До первого обновления считается на месте
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> current = snapshot;
+        return current != null ? current : buildSnapshot();
+    }
+
+    @Scheduled(fixedDelayString = "${dashboard.refresh-interval:PT1M}")
+    public void refresh() {
+        buildSnapshot();
+    }
+
+    private Map<String, Object> buildSnapshot() {
+        long started = System.currentTimeMillis();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalPatients", patientRepository.count());
+        stats.put("totalDiagnoses", diagnosisRepository.count());
+        stats.put("totalTests", testRepository.count());
+        stats.put("totalDoctors", doctorRepository.count());
+        stats.put("topDoctorsByDiagnoses",
+                toResponse(doctorRepository.findTopByDiagnoses(TOP_DOCTORS), "diagnoses"));
+        stats.put("topDoctorsByAppointments",
+                toResponse(doctorRepository.findTopByAppointments(TOP_DOCTORS), "appointments"));
+        stats.put("generatedAt", LocalDateTime.now());
+
+        Map<String, Object> current = Collections.unmodifiableMap(stats);
+        snapshot = current;
+        log.debug("Статистика дашборда обновлена за {} мс", System.currentTimeMillis() - started);
+        return current;
+    }
+
+    private List<Map<String, Object>> toResponse(List<DoctorStatistic> rows, String metric) {
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (DoctorStatistic row : rows) {
+            Map<String, Object> doctorStats = new LinkedHashMap<>();
+            doctorStats.put("doctorId", row.getDoctorId());
+            doctorStats.put("fullName", fullName(row));
+            doctorStats.put("specialty", row.getSpecialty() != null ? row.getSpecialty() : "Көрсетілмеген");
+            doctorStats.put("count", row.getTotal());
+            doctorStats.put("metric", metric);
+            result.add(Collections.unmodifiableMap(doctorStats));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private String fullName(DoctorStatistic row) {
+        String firstName = row.getFirstName() != null ? row.getFirstName() : "";
+        String lastName = row.getLastName() != null ? row.getLastName() : "";
+        String fullName = (firstName + " " + lastName).trim();
+        return fullName.isEmpty() ? "Дәрігер #" + row.getDoctorId() : fullName;
+    }
+}
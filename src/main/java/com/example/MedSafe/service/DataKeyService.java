@@ -0,0 +1,245 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.PatientDataKey;
+import com.example.MedSafe.repository.PatientDataKeyRepository;
+import com.example.MedSafe.repository.SecurityKeyRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Envelope encryption: у пациента один AES-ключ данных (DEK), завёрнутый его RSA-ключом.
+ * Записи шифруются DEK, поэтому RSA-распаковка нужна один раз на ключ, а не на каждую запись
+ */
+@Service
+@RequiredArgsConstructor
+public class DataKeyService {
+    private static final Logger logger = LoggerFactory.getLogger(DataKeyService.class);
+
+    private static final String AES_ALGORITHM = "AES";
+    private static final int AES_KEY_BYTES = 32;
+    private static final String RSA_WRAP_CIPHER = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final int MAX_UNWRAPPED_KEYS = 1_000;
+    private static final long UNWRAPPED_KEY_TTL_MILLIS = 5 * 60 * 1000;
+
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> RSA_CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance(RSA_WRAP_CIPHER);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cipher " + RSA_WRAP_CIPHER + " not available", e);
+        }
+    });
+
+    private final PatientDataKeyRepository patientDataKeyRepository;
+    private final SecurityKeyRepository securityKeyRepository;
+    private final RsaKeyCache rsaKeyCache;
+    private final PlatformTransactionManager transactionManager;
+
+    // userId -> DEK для шифрования новых записей (живёт до перезапуска или смены RSA-ключа)
+    private final Map<Integer, DataKey> encryptionKeys = new ConcurrentHashMap<>();
+
+    // userId -> ключ, который сейчас создаётся (параллельные записи одного пациента ждут его)
+    private final Map<Integer, CompletableFuture<DataKey>> creatingKeys = new ConcurrentHashMap<>();
+
+    // "dataKeyId:отпечаток приватного ключа" -> распакованный DEK.
+    // Отпечаток в ключе кэша: DEK отдаётся только тому, кто предъявил тот же приватный ключ
+    private final Map<String, CachedKey> unwrappedKeys = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+            return size() > MAX_UNWRAPPED_KEYS;
+        }
+    };
+
+    /**
+     * DEK для шифрования новой записи пользователя. Если в памяти нет ключа под текущий
+     * RSA-ключ — создаётся и сохраняется новый
+     */
+    public DataKey getEncryptionKey(Integer userId, String publicKeyStr) throws GeneralSecurityException {
+        String publicKeySha256 = RsaKeyCache.fingerprint(publicKeyStr.getBytes(StandardCharsets.US_ASCII));
+
+        DataKey current = encryptionKeys.get(userId);
+        if (current != null && current.publicKeySha256.equals(publicKeySha256)) {
+            return current;
+        }
+
+        PublicKey publicKey = rsaKeyCache.getPublicKey(userId, publicKeyStr);
+        while (true) {
+            // Один создатель ключа на пользователя: остальные ждут его future. RSA-обёртка и вставка
+            // в БД идут вне блокировок карты — пациенты с соседними бинами ConcurrentHashMap не ждут чужой запрос
+            CompletableFuture<DataKey> mine = new CompletableFuture<>();
+            CompletableFuture<DataKey> pending = creatingKeys.putIfAbsent(userId, mine);
+            if (pending != null) {
+                DataKey created = await(pending);
+                if (created.publicKeySha256.equals(publicKeySha256)) {
+                    return created;
+                }
+                // Ключ создавался под другой RSA-ключ — пробуем снова
+                continue;
+            }
+
+            try {
+                DataKey existing = encryptionKeys.get(userId);
+                DataKey key = existing != null && existing.publicKeySha256.equals(publicKeySha256)
+                        ? existing
+                        : createDataKey(userId, publicKey, publicKeySha256);
+                encryptionKeys.put(userId, key);
+                mine.complete(key);
+                return key;
+            } catch (RuntimeException e) {
+                mine.completeExceptionally(e);
+                throw unwrapSecurityException(e);
+            } finally {
+                creatingKeys.remove(userId, mine);
+            }
+        }
+    }
+
+    private static DataKey await(CompletableFuture<DataKey> pending) throws GeneralSecurityException {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw unwrapSecurityException(cause);
+            }
+            throw e;
+        }
+    }
+
+    private static RuntimeException unwrapSecurityException(RuntimeException e) throws GeneralSecurityException {
+        if (e instanceof IllegalStateException && e.getCause() instanceof GeneralSecurityException cause) {
+            throw cause;
+        }
+        return e;
+    }
+
+    /**
+     * Распаковывает DEK приватным ключом пользователя (с кэшированием)
+     */
+    public SecretKey unwrap(Integer dataKeyId, PrivateKey privateKey) throws GeneralSecurityException {
+        String cacheKey = dataKeyId + ":" + RsaKeyCache.fingerprint(privateKey.getEncoded());
+        long now = System.currentTimeMillis();
+
+        synchronized (unwrappedKeys) {
+            CachedKey cached = unwrappedKeys.get(cacheKey);
+            if (cached != null && cached.expiresAt > now) {
+                return cached.key;
+            }
+        }
+
+        PatientDataKey dataKey = patientDataKeyRepository.findById(dataKeyId)
+                .orElseThrow(() -> new IllegalArgumentException("Data key " + dataKeyId + " not found"));
+
+        Cipher rsaCipher = RSA_CIPHERS.get();
+        rsaCipher.init(Cipher.DECRYPT_MODE, privateKey);
+        SecretKey key = new SecretKeySpec(rsaCipher.doFinal(Base64.getDecoder().decode(dataKey.getWrappedKey())),
+                AES_ALGORITHM);
+
+        synchronized (unwrappedKeys) {
+            unwrappedKeys.put(cacheKey, new CachedKey(key, now + UNWRAPPED_KEY_TTL_MILLIS));
+        }
+        rememberForEncryption(dataKey, key);
+        return key;
+    }
+
+    /**
+     * Сбрасывает ключ шифрования пользователя (после перегенерации RSA-ключей)
+     */
+    public void invalidate(Integer userId) {
+        encryptionKeys.remove(userId);
+    }
+
+    private DataKey createDataKey(Integer userId, PublicKey publicKey, String publicKeySha256) {
+        try {
+            byte[] keyBytes = new byte[AES_KEY_BYTES];
+            SECURE_RANDOM.nextBytes(keyBytes);
+
+            Cipher rsaCipher = RSA_CIPHERS.get();
+            rsaCipher.init(Cipher.ENCRYPT_MODE, publicKey, SECURE_RANDOM);
+            String wrappedKey = Base64.getEncoder().encodeToString(rsaCipher.doFinal(keyBytes));
+
+            PatientDataKey dataKey = new PatientDataKey();
+            dataKey.setUserId(userId);
+            dataKey.setWrappedKey(wrappedKey);
+            dataKey.setPublicKeySha256(publicKeySha256);
+            // Отдельная транзакция: ключ уже в кэше и должен остаться в БД, даже если запись диагноза откатится
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            PatientDataKey saved = transaction.execute(status -> patientDataKeyRepository.save(dataKey));
+
+            logger.info("Создан ключ данных dataKeyId={} для userId={}", saved.getDataKeyId(), userId);
+            return new DataKey(saved.getDataKeyId(), new SecretKeySpec(keyBytes, AES_ALGORITHM), publicKeySha256);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to create data key", e);
+        }
+    }
+
+    /**
+     * После распаковки последний ключ пользователя можно снова использовать для новых записей —
+     * если он завёрнут текущим RSA-ключом
+     */
+    private void rememberForEncryption(PatientDataKey dataKey, SecretKey key) {
+        Integer userId = dataKey.getUserId();
+        if (encryptionKeys.containsKey(userId)) {
+            return;
+        }
+        securityKeyRepository.findByUserUserId(userId)
+                .map(securityKey -> RsaKeyCache.fingerprint(
+                        securityKey.getPublicKey().getBytes(StandardCharsets.US_ASCII)))
+                .filter(dataKey.getPublicKeySha256()::equals)
+                .ifPresent(sha256 -> encryptionKeys.putIfAbsent(userId,
+                        new DataKey(dataKey.getDataKeyId(), key, sha256)));
+    }
+
+    /**
+     * Распакованный ключ данных вместе с его id (пишется в зашифрованную запись)
+     */
+    public static final class DataKey {
+        private final Integer id;
+        private final SecretKey key;
+        private final String publicKeySha256;
+
+        private DataKey(Integer id, SecretKey key, String publicKeySha256) {
+            this.id = id;
+            this.key = key;
+            this.publicKeySha256 = publicKeySha256;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public SecretKey getKey() {
+            return key;
+        }
+    }
+
+    private static final class CachedKey {
+        private final SecretKey key;
+        private final long expiresAt;
+
+        private CachedKey(SecretKey key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.repository.FileBlobRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Сборщик мусора для content-addressed хранилища: удаляет файлы без ссылок,
+ * файлы без записи в file_blobs и брошенные временные загрузки
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FileBlobGarbageCollector {
+
+    private static final int BATCH_SIZE = 100;
+
+    private final FileBlobRepository fileBlobRepository;
+    private final FileStorageService fileStorageService;
+    private final ThumbnailService thumbnailService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${file.upload-dir:uploads}")
+    private String uploadDir;
+
+    // Файл без ссылок живёт ещё grace-period: за это время его может подхватить новая загрузка
+    @Value("${file.blob-gc.grace-period:PT1H}")
+    private Duration gracePeriod;
+
+    @Scheduled(fixedDelayString = "${file.blob-gc.interval:PT15M}",
+            initialDelayString = "${file.blob-gc.interval:PT15M}")
+    public void collect() {
+        int removed = removeUnreferencedBlobs();
+        int orphans = removeOrphanFiles();
+        int temp = removeStaleTempFiles();
+        if (removed + orphans + temp > 0) {
+            log.info("Сборка мусора файлов: без ссылок={}, без записи={}, временных={}", removed, orphans, temp);
+        }
+    }
+
+    private int removeUnreferencedBlobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(gracePeriod);
+        int removed = 0;
+        List<String> batch;
+        do {
+            batch = fileBlobRepository.findUnreferenced(cutoff, BATCH_SIZE);
+            for (String sha256 : batch) {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> removeBlob(sha256)))) {
+                    removed++;
+                }
+            }
+        } while (batch.size() == BATCH_SIZE);
+        return removed;
+    }
+
+    private boolean removeBlob(String sha256) {
+        // Строка блокируется: параллельный acquire подождёт и создаст запись заново
+        return fileBlobRepository.findUnreferencedForUpdate(sha256)
+                .map(blob -> {
+                    try {
+                        Path blobPath = fileStorageService.resolveBlobPath(sha256);
+                        thumbnailService.deleteVariants(blobPath);
+                        Files.deleteIfExists(blobPath);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Не удалось удалить файл " + sha256, e);
+                    }
+                    fileBlobRepository.delete(blob);
+                    return true;
+                })
+                .orElse(false);
+    }
+
+    private int removeOrphanFiles() {
+        Path blobsRoot = Paths.get(uploadDir, FileStorageService.BLOBS_SUBDIRECTORY);
+        if (!Files.isDirectory(blobsRoot)) {
+            return 0;
+        }
+
+        int removed = 0;
+        try (Stream<Path> files = Files.walk(blobsRoot)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String sha256 = file.getFileName().toString();
+                // Свежие файлы пропускаем: их запись может быть в ещё не закоммиченной транзакции
+                if (!FileStorageService.isSha256(sha256) || !isOlderThanGrace(file)
+                        || fileBlobRepository.existsById(sha256)) {
+                    continue;
+                }
+                thumbnailService.deleteVariants(file);
+                if (Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при обходе хранилища файлов: {}", blobsRoot, e);
+        }
+        return removed;
+    }
+
+    private int removeStaleTempFiles() {
+        Path tempRoot = Paths.get(uploadDir, FileStorageService.TEMP_SUBDIRECTORY);
+        if (!Files.isDirectory(tempRoot)) {
+            return 0;
+        }
+
+        int removed = 0;
+        try (Stream<Path> files = Files.list(tempRoot)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".part") && isOlderThanGrace(file)
+                        && Files.deleteIfExists(file)) {
+                    removed++;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при очистке временных файлов: {}", tempRoot, e);
+        }
+        return removed;
+    }
+
+    private boolean isOlderThanGrace(Path file) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        return modified.toInstant().isBefore(Instant.now().minus(gracePeriod));
+    }
+}
@@ -1,19 +1,53 @@
 package com.example.MedSafe.service;
 
+import com.example.MedSafe.model.FileBlob;
+import com.example.MedSafe.repository.FileBlobRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
+@RequiredArgsConstructor
+@Slf4j
 public class FileStorageService {
 
+    public static final String TEMP_SUBDIRECTORY = "tmp";
+    public static final String BLOBS_SUBDIRECTORY = "blobs";
+
+    private static final int CONTENT_TYPE_CACHE_LIMIT = 10_000;
+
+    private final FileBlobRepository fileBlobRepository;
+    private final ThumbnailService thumbnailService;
+
+    // Тип контента, полученный при загрузке: "subdirectory/filename" -> MediaType
+    private final Map<String, MediaType> contentTypeCache = new ConcurrentHashMap<>();
+
     // URL для доступа к файлам (можно настроить в application.properties)
     @Value("${file.base-url:http://localhost:8080}")
     private String baseUrl;
@@ -24,28 +58,250 @@ public class FileStorageService {
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
 
+    // Хранить файлы по SHA-256 содержимого (одинаковые файлы — одна копия на диске)
+    @Value("${file.content-addressed:false}")
+    private boolean contentAddressed;
 
     public String saveFileV2(MultipartFile file) throws IOException {
+        // Возвращаем URL для доступа к файлу через API
+        return commit(stage(file), "messages");
+    }
 
-        String subdirectory = "messages";
-        // Генерируем уникальное имя файла
-        String originalFilename = file.getOriginalFilename();
-        String fileExtension = "";
+    /**
+     * Первый этап загрузки: потоково пишет файл во временную папку и считает SHA-256.
+     * Вызывать вне транзакции — копирование больших файлов не должно держать соединение с БД
+     */
+    public StagedFile stage(MultipartFile file) throws IOException {
+        Path tempDir = Paths.get(uploadDir, TEMP_SUBDIRECTORY);
+        Files.createDirectories(tempDir);
 
-        if (originalFilename != null && originalFilename.contains(".")) {
-            fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        String storedName = UUID.randomUUID() + extractExtension(file.getOriginalFilename());
+        Path tempPath = tempDir.resolve(storedName + ".part");
+
+        MessageDigest digest = newSha256();
+        long size;
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+             OutputStream out = Files.newOutputStream(tempPath)) {
+            size = in.transferTo(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
         }
 
-        String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
+        return new StagedFile(
+                tempPath,
+                storedName,
+                file.getOriginalFilename(),
+                file.getContentType(),
+                size,
+                HexFormat.of().formatHex(digest.digest())
+        );
+    }
 
-        // Путь для сохранения
-        Path targetPath = Paths.get(uploadDir, subdirectory, uniqueFilename);
+    /**
+     * Второй этап: переносит подготовленный файл в постоянное хранилище (rename, без копирования)
+     * и возвращает URL для доступа к нему. В content-addressed режиме должен вызываться в транзакции
+     */
+    public String commit(StagedFile staged, String subdirectory) throws IOException {
+        if (contentAddressed) {
+            return commitBlob(staged);
+        }
 
-        // Копируем файл
-        Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
+        Path targetDir = Paths.get(uploadDir, subdirectory);
+        Files.createDirectories(targetDir);
 
-        // Возвращаем URL для доступа к файлу через API
-        return baseUrl + "/api/v1/files/" + subdirectory + "/" + uniqueFilename;
+        Path targetPath = targetDir.resolve(staged.getStoredName());
+        moveFile(staged.getPath(), targetPath);
+        staged.path = targetPath;
+        rememberContentType(subdirectory, staged.getStoredName(), staged.getContentType());
+        generateThumbnailsAfterCommit(targetPath, staged.getContentType());
+
+        return buildFileUrl(subdirectory, staged.getStoredName());
+    }
+
+    private String commitBlob(StagedFile staged) throws IOException {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Content-addressed commit requires an active transaction");
+        }
+
+        // Сначала счётчик ссылок: строка заблокирована до коммита, сборщик мусора не удалит файл
+        fileBlobRepository.acquire(staged.getChecksum(), staged.getSize(), staged.getContentType());
+
+        Path blobPath = resolveBlobPath(staged.getChecksum());
+        Files.createDirectories(blobPath.getParent());
+
+        if (Files.exists(blobPath)) {
+            // Такой файл уже есть — копию не храним
+            Files.setLastModifiedTime(blobPath, FileTime.from(Instant.now()));
+            Files.deleteIfExists(staged.getPath());
+        } else {
+            try {
+                moveFile(staged.getPath(), blobPath);
+            } catch (FileAlreadyExistsException e) {
+                Files.deleteIfExists(staged.getPath());
+            }
+        }
+        staged.path = blobPath;
+        staged.shared = true;
+
+        String blobName = staged.getChecksum() + extractExtension(staged.getOriginalFilename());
+        rememberContentType(BLOBS_SUBDIRECTORY, blobName, staged.getContentType());
+        generateThumbnailsAfterCommit(blobPath, staged.getContentType());
+        return buildFileUrl(BLOBS_SUBDIRECTORY, blobName);
+    }
+
+    private void generateThumbnailsAfterCommit(Path filePath, String contentType) {
+        if (!ThumbnailService.isImage(contentType)) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            thumbnailService.generateAsync(filePath, contentType);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                thumbnailService.generateAsync(filePath, contentType);
+            }
+        });
+    }
+
+    /**
+     * Путь к сохранённому файлу по подпапке и имени из URL. Выход за пределы подпапки запрещён
+     */
+    public Path resolveStoredPath(String subdirectory, String filename) {
+        if (BLOBS_SUBDIRECTORY.equals(subdirectory)) {
+            return resolveBlobPath(stripExtension(filename));
+        }
+
+        Path root = Paths.get(uploadDir, subdirectory).toAbsolutePath().normalize();
+        Path filePath = root.resolve(filename).normalize();
+        if (!filePath.getParent().equals(root)) {
+            throw new IllegalArgumentException("Invalid file name: " + filename);
+        }
+        return filePath;
+    }
+
+    /**
+     * Тип контента без чтения файла: сначала тип, сохранённый при загрузке
+     * (для blob-файлов — из file_blobs), затем по расширению
+     */
+    public MediaType resolveContentType(String subdirectory, String filename) {
+        String key = subdirectory + "/" + filename;
+        MediaType cached = contentTypeCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        String stored = null;
+        if (BLOBS_SUBDIRECTORY.equals(subdirectory)) {
+            stored = fileBlobRepository.findById(stripExtension(filename))
+                    .map(FileBlob::getContentType)
+                    .orElse(null);
+        }
+
+        MediaType contentType = parseContentType(stored);
+        if (contentType == null) {
+            contentType = MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        }
+        cacheContentType(key, contentType);
+        return contentType;
+    }
+
+    private void rememberContentType(String subdirectory, String filename, String contentType) {
+        MediaType mediaType = parseContentType(contentType);
+        if (mediaType != null) {
+            cacheContentType(subdirectory + "/" + filename, mediaType);
+        }
+    }
+
+    private void cacheContentType(String key, MediaType contentType) {
+        if (contentTypeCache.size() >= CONTENT_TYPE_CACHE_LIMIT) {
+            contentTypeCache.clear();
+        }
+        contentTypeCache.put(key, contentType);
+    }
+
+    private MediaType parseContentType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return null;
+        }
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            // Браузеры часто присылают octet-stream для любых файлов — лучше определить по расширению
+            return MediaType.APPLICATION_OCTET_STREAM.equals(mediaType) ? null : mediaType;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Путь к файлу в content-addressed хранилище: blobs/ab/cd/abcd...
+     */
+    public Path resolveBlobPath(String sha256) {
+        if (!isSha256(sha256)) {
+            throw new IllegalArgumentException("Invalid blob id: " + sha256);
+        }
+        return Paths.get(uploadDir, BLOBS_SUBDIRECTORY, sha256.substring(0, 2), sha256.substring(2, 4), sha256);
+    }
+
+    public static boolean isSha256(String value) {
+        return value != null && value.matches("[0-9a-f]{64}");
+    }
+
+    /**
+     * Удаляет файл по URL, который вернул commit. Для content-addressed файлов только уменьшает
+     * счётчик ссылок — сам файл удалит сборщик мусора. В content-addressed случае нужна транзакция
+     */
+    public void deleteByUrl(String fileUrl) {
+        // Пример: http://localhost:8080/api/v1/files/documents/uuid.pdf
+        String[] parts = fileUrl.split("/");
+        if (parts.length < 2) {
+            log.warn("Неверный формат URL файла: {}", fileUrl);
+            return;
+        }
+
+        String filename = parts[parts.length - 1];
+        String subdirectory = parts[parts.length - 2];
+
+        if (BLOBS_SUBDIRECTORY.equals(subdirectory)) {
+            String sha256 = stripExtension(filename);
+            if (isSha256(sha256)) {
+                fileBlobRepository.release(sha256);
+            }
+            return;
+        }
+
+        try {
+            Path filePath = Paths.get(uploadDir, subdirectory, filename);
+            thumbnailService.deleteVariants(filePath);
+            if (Files.deleteIfExists(filePath)) {
+                log.info("Файл удален: {}", filePath.toAbsolutePath());
+            } else {
+                log.warn("Файл не найден для удаления: {}", filePath.toAbsolutePath());
+            }
+        } catch (IOException e) {
+            log.error("Ошибка при удалении файла: {}", fileUrl, e);
+        }
+    }
+
+    /**
+     * Удаляет подготовленный файл (временный или уже перенесённый), например при откате транзакции
+     */
+    public void discard(StagedFile staged) {
+        if (staged.isShared()) {
+            // Общий файл может использоваться другими ссылками, его удаляет только сборщик мусора
+            return;
+        }
+        try {
+            Files.deleteIfExists(staged.getPath());
+        } catch (IOException e) {
+            log.warn("Failed to discard staged file {}: {}", staged.getPath(), e.getMessage());
+        }
+    }
+
+    public String buildFileUrl(String subdirectory, String storedName) {
+        return baseUrl + "/api/v1/files/" + subdirectory + "/" + storedName;
     }
 
     public String saveFile(MultipartFile file) throws IOException {
@@ -56,12 +312,7 @@ public class FileStorageService {
         }
 
         // Генерируем уникальное имя файла
-        String originalFileName = file.getOriginalFilename();
-        String fileExtension = "";
-        if (originalFileName != null && originalFileName.contains(".")) {
-            fileExtension = originalFileName.substring(originalFileName.lastIndexOf("."));
-        }
-        String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
+        String uniqueFileName = UUID.randomUUID().toString() + extractExtension(file.getOriginalFilename());
 
         // Сохраняем файл
         Path filePath = uploadPath.resolve(uniqueFileName);
@@ -81,6 +332,62 @@ public class FileStorageService {
     }
 
     public String getFileUrl(String fileName) {
+        // Новые вложения уже хранят полный URL
+        if (fileName.startsWith("http://") || fileName.startsWith("https://") || fileName.startsWith("/")) {
+            return fileName;
+        }
         return "/api/v1/files/" + fileName;
     }
-}
\ No newline at end of file
+
+    private String extractExtension(String originalFilename) {
+        if (originalFilename != null && originalFilename.contains(".")) {
+            return originalFilename.substring(originalFilename.lastIndexOf("."));
+        }
+        return "";
+    }
+
+    public static String stripExtension(String filename) {
+        int dot = filename.indexOf('.');
+        return dot >= 0 ? filename.substring(0, dot) : filename;
+    }
+
+    private void moveFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Файл, загруженный во временную папку и ещё не привязанный к сущности
+     */
+    @Getter
+    public static class StagedFile {
+        private Path path;
+        private final String storedName;
+        private final String originalFilename;
+        private final String contentType;
+        private final long size;
+        private final String checksum;
+        private boolean shared;
+
+        StagedFile(Path path, String storedName, String originalFilename,
+                   String contentType, long size, String checksum) {
+            this.path = path;
+            this.storedName = storedName;
+            this.originalFilename = originalFilename;
+            this.contentType = contentType;
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+}
@@ -6,23 +6,37 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.security.Key;
+import java.time.Duration;
 import java.util.Base64;
 import java.util.Date;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
 
     private final Key key;
-    private final long EXPIRATION_MS = 86400000; // 1 день
+    private final JwtParser parser;
+    private final TokenDenyList denyList;
+    // Access-токен короткоживущий: дальше клиент обновляет его refresh-токеном
+    private final long EXPIRATION_MS;
 
-    public JwtUtil(@Value("${jwt.secret}") String secret) {
+    public JwtUtil(@Value("${jwt.secret}") String secret,
+                   @Value("${jwt.access-ttl:PT15M}") Duration accessTtl,
+                   TokenDenyList denyList) {
+        this.denyList = denyList;
+        this.EXPIRATION_MS = accessTtl.toMillis();
         byte[] keyBytes = Base64.getDecoder().decode(secret);
         this.key = Keys.hmacShaKeyFor(keyBytes);
+        // Парсер потокобезопасен — собираем один раз
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build();
     }
 
     public String generateToken(String username) {
         return Jwts.builder()
                 .setSubject(username)
+                .setId(UUID.randomUUID().toString())
                 .setIssuedAt(new Date())
                 .setExpiration(new Date(System.currentTimeMillis() + EXPIRATION_MS))
                 .signWith(key, SignatureAlgorithm.HS256)
@@ -30,24 +44,41 @@ public class JwtUtil {
     }
 
     public String extractUsername(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        if (denyList.isRevoked(claims.getId())) {
+            throw new JwtException("Token revoked");
+        }
+        return claims.getSubject();
     }
 
     public boolean validateToken(String token) {
+        return parseClaims(token) != null;
+    }
+
+    /**
+     * Проверка подписи, срока и отзыва за один разбор токена. Возвращает claims или null, если токен невалиден
+     */
+    public Claims parseClaims(String token) {
         try {
-            Jwts.parserBuilder()
-                    .setSigningKey(key)
-                    .build()
-                    .parseClaimsJws(token);
-            return true;
-        } catch (JwtException e) {
+            Claims claims = parser.parseClaimsJws(token).getBody();
+            return denyList.isRevoked(claims.getId()) ? null : claims;
+        } catch (JwtException | IllegalArgumentException e) {
             // Логируй при необходимости: e.getMessage()
-            return false;
+            return null;
         }
     }
+
+    /**
+     * Отзывает access-токен до конца его срока (выход). Невалидный токен игнорируется
+     */
+    public void revokeToken(String token) {
+        Claims claims = parseClaims(token);
+        if (claims != null && claims.getExpiration() != null) {
+            denyList.revoke(claims.getId(), claims.getExpiration().getTime());
+        }
+    }
+
+    public long getExpirationMs() {
+        return EXPIRATION_MS;
+    }
 }
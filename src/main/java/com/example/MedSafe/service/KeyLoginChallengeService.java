@@ -0,0 +1,83 @@
+package com.example.MedSafe.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Одноразовые challenge для входа по ключу: клиент подписывает строку своим приватным ключом,
+ * сервер проверяет подпись публичным. Приватный ключ на сервер не передаётся.
+ * На имя пользователя действует один challenge: новый заменяет предыдущий. Общего лимита нет —
+ * число имён, для которых выдаются challenge, ограничивает лимит запросов по IP (LoginRateLimitFilter)
+ */
+@Service
+@Slf4j
+public class KeyLoginChallengeService {
+
+    private static final String CHALLENGE_PREFIX = "medsafe-login:";
+    private static final int NONCE_BYTES = 32;
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    // username -> последний выданный challenge и срок его действия
+    private final Map<String, PendingChallenge> pending = new ConcurrentHashMap<>();
+
+    @Value("${security.key-login.challenge-ttl:PT2M}")
+    private Duration challengeTtl;
+
+    /**
+     * Новый challenge для пользователя. Выдаётся и для несуществующих имён, чтобы не раскрывать их
+     */
+    public String issue(String username) {
+        byte[] nonce = new byte[NONCE_BYTES];
+        SECURE_RANDOM.nextBytes(nonce);
+        String challenge = CHALLENGE_PREFIX + username + ":"
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(nonce);
+        pending.put(username, new PendingChallenge(challenge, System.currentTimeMillis() + challengeTtl.toMillis()));
+        return challenge;
+    }
+
+    /**
+     * Забирает challenge (одноразово). false — не выдавался этому пользователю, заменён новым или истёк
+     */
+    public boolean consume(String username, String challenge) {
+        if (username == null || challenge == null) {
+            return false;
+        }
+        PendingChallenge issued = pending.get(username);
+        if (issued == null || !MessageDigest.isEqual(
+                issued.challenge.getBytes(StandardCharsets.UTF_8), challenge.getBytes(StandardCharsets.UTF_8))) {
+            return false;
+        }
+        // remove(key, value): из двух параллельных проверок одного challenge проходит только одна
+        return pending.remove(username, issued) && issued.expiresAt > System.currentTimeMillis();
+    }
+
+    public long getTtlSeconds() {
+        return challengeTtl.toSeconds();
+    }
+
+    @Scheduled(fixedDelayString = "${security.key-login.cleanup-interval:PT1M}")
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        pending.values().removeIf(challenge -> challenge.expiresAt <= now);
+    }
+
+    private static final class PendingChallenge {
+        private final String challenge;
+        private final long expiresAt;
+
+        private PendingChallenge(String challenge, long expiresAt) {
+            this.challenge = challenge;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
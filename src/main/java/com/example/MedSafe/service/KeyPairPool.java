@@ -0,0 +1,125 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.dto.KeyPairPoolStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул заранее сгенерированных пар RSA-2048. Фоновый поток держит пул заполненным,
+ * запрос забирает готовую пару и генерирует сам, только если пул пуст
+ */
+@Component
+public class KeyPairPool {
+    private static final Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+    private static final String RSA_ALGORITHM = "RSA";
+    private static final int RSA_KEY_SIZE = 2048;
+    private static final long RATE_SAMPLE_MILLIS = 10_000;
+
+    private final BlockingQueue<KeyPair> pool;
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private Thread refiller;
+
+    // Скорость генерации за последний интервал замера
+    private volatile double generationsPerSecond;
+    private long lastSampleCount;
+    private long lastSampleAt = System.currentTimeMillis();
+
+    public KeyPairPool(@Value("${security.key-pool.size:32}") int size) {
+        this.pool = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Готовая пара из пула или, если пул пуст, сгенерированная в текущем потоке
+     */
+    public KeyPair take() throws GeneralSecurityException {
+        taken.increment();
+        KeyPair pair = pool.poll();
+        if (pair != null) {
+            return pair;
+        }
+        misses.increment();
+        logger.debug("Пул ключей пуст, генерация в потоке запроса");
+        return generate();
+    }
+
+    public KeyPairPoolStats getStats() {
+        return KeyPairPoolStats.builder()
+                .depth(pool.size())
+                .capacity(pool.size() + pool.remainingCapacity())
+                .generated(generated.sum())
+                .taken(taken.sum())
+                .misses(misses.sum())
+                .generationsPerSecond(generationsPerSecond)
+                .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        // Один поток с низким приоритетом: пополнение не должно отнимать CPU у запросов
+        refiller = new Thread(this::refill, "key-pair-pool");
+        refiller.setDaemon(true);
+        refiller.setPriority(Thread.MIN_PRIORITY);
+        refiller.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refiller != null) {
+            refiller.interrupt();
+        }
+    }
+
+    @Scheduled(fixedRate = RATE_SAMPLE_MILLIS)
+    public synchronized void sampleRate() {
+        long now = System.currentTimeMillis();
+        long count = generated.sum();
+        long elapsed = now - lastSampleAt;
+        if (elapsed > 0) {
+            generationsPerSecond = (count - lastSampleCount) * 1000.0 / elapsed;
+        }
+        lastSampleCount = count;
+        lastSampleAt = now;
+    }
+
+    private void refill() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                // put блокируется, пока пул полон
+                pool.put(generate());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (GeneralSecurityException | RuntimeException e) {
+                logger.error("Ошибка фоновой генерации ключей: {}", e.getMessage(), e);
+                try {
+                    Thread.sleep(RATE_SAMPLE_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private KeyPair generate() throws GeneralSecurityException {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance(RSA_ALGORITHM);
+        keyGen.initialize(RSA_KEY_SIZE);
+        KeyPair pair = keyGen.generateKeyPair();
+        generated.increment();
+        return pair;
+    }
+}
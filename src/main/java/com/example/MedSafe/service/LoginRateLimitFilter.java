@@ -0,0 +1,55 @@
+package com.example.MedSafe.service;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Лимит попыток входа и регистрации по IP — до разбора тела и хеширования пароля.
+ * /refresh и /logout не ограничиваются: их шлёт каждый клиент раз в срок access-токена,
+ * а за NAT или прокси у многих клиентов один адрес.
+ * Адрес клиента — getRemoteAddr(): за reverse proxy его подставляет RemoteIpValve из X-Forwarded-For,
+ * только для запросов от доверенных прокси (server.tomcat.remoteip.internal-proxies)
+ */
+@Component
+@RequiredArgsConstructor
+public class LoginRateLimitFilter extends OncePerRequestFilter {
+
+    // /login, /login/key, /login/key/challenge, /login/key/verify
+    private static final String LOGIN_PATH_PREFIX = "/api/auth/login";
+    private static final String REGISTER_PATH = "/api/auth/register";
+
+    private final LoginRateLimiter loginRateLimiter;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !"POST".equalsIgnoreCase(request.getMethod())
+                || !(uri.startsWith(LOGIN_PATH_PREFIX) || uri.equals(REGISTER_PATH));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        long retryAfter = loginRateLimiter.acquireForIp(request.getRemoteAddr());
+        if (retryAfter > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"Too many requests, try again later\"}");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
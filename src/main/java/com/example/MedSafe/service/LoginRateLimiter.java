@@ -0,0 +1,104 @@
+package com.example.MedSafe.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token bucket для входа и регистрации: отдельно по IP и по имени пользователя.
+ * Каждая попытка забирает токен, токены восстанавливаются равномерно до ёмкости корзины
+ */
+@Component
+@Slf4j
+public class LoginRateLimiter {
+
+    private final Map<String, Bucket> ipBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> usernameBuckets = new ConcurrentHashMap<>();
+
+    @Value("${security.login-rate-limit.ip.capacity:30}")
+    private int ipCapacity;
+
+    @Value("${security.login-rate-limit.ip.per-minute:30}")
+    private int ipPerMinute;
+
+    @Value("${security.login-rate-limit.username.capacity:5}")
+    private int usernameCapacity;
+
+    @Value("${security.login-rate-limit.username.per-minute:5}")
+    private int usernamePerMinute;
+
+    /**
+     * Через сколько секунд у IP появится токен; 0 — запрос можно выполнять (токен уже списан)
+     */
+    public long acquireForIp(String ip) {
+        return acquire(ipBuckets, ip, ipCapacity, ipPerMinute);
+    }
+
+    /**
+     * То же для попыток входа под конкретным именем пользователя
+     */
+    public long acquireForUsername(String username) {
+        if (username == null) {
+            return 0;
+        }
+        return acquire(usernameBuckets, username.toLowerCase(Locale.ROOT), usernameCapacity, usernamePerMinute);
+    }
+
+    /**
+     * Убирает полностью восстановившиеся корзины, чтобы карта не росла от разовых посетителей
+     */
+    @Scheduled(fixedDelayString = "${security.login-rate-limit.cleanup-interval:PT5M}")
+    public void cleanup() {
+        long now = System.nanoTime();
+        ipBuckets.values().removeIf(bucket -> bucket.isFull(now, ipCapacity, ipPerMinute));
+        usernameBuckets.values().removeIf(bucket -> bucket.isFull(now, usernameCapacity, usernamePerMinute));
+    }
+
+    private long acquire(Map<String, Bucket> buckets, String key, int capacity, int perMinute) {
+        long now = System.nanoTime();
+        long waitNanos = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now))
+                .tryConsume(now, capacity, perMinute);
+        if (waitNanos > 0) {
+            log.warn("Превышен лимит попыток входа для {}", key);
+        }
+        return waitNanos == 0 ? 0 : Math.max(1, waitNanos / 1_000_000_000L);
+    }
+
+    private static final class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(int capacity, long now) {
+            this.tokens = capacity;
+            this.updatedAt = now;
+        }
+
+        /**
+         * Списывает токен; возвращает 0 при успехе или сколько наносекунд ждать следующего
+         */
+        synchronized long tryConsume(long now, int capacity, int perMinute) {
+            double perNano = perMinute / 60_000_000_000.0;
+            refill(now, capacity, perNano);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / perNano);
+        }
+
+        synchronized boolean isFull(long now, int capacity, int perMinute) {
+            refill(now, capacity, perMinute / 60_000_000_000.0);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now, int capacity, double perNano) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * perNano);
+            updatedAt = now;
+        }
+    }
+}
@@ -8,6 +8,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -19,28 +20,100 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class MessageService {
 
+    private static final String ATTACHMENTS_SUBDIRECTORY = "messages";
+
     private final MessageRepository messageRepository;
     private final ChatRepository chatRepository;
+    private final ChatParticipantRepository chatParticipantRepository;
     private final UserService userService;
     private final FileStorageService fileStorageService;
     private final MessageAttachmentRepository attachmentRepository;
+    private final ChatNotificationService chatNotificationService;
+    private final TransactionTemplate transactionTemplate;
 
+    /**
+     * История сообщений чата. С курсором before/after (messageId) работает keyset-пагинация,
+     * без курсора — последние сообщения со смещением offset
+     */
     @Transactional(readOnly = true)
-    public List<MessageResponse> getChatMessages(Long chatId, Integer limit, Integer offset) {
-        PageRequest pageRequest = PageRequest.of(offset / limit, limit);
-        List<Message> messages = messageRepository.findByChatId(chatId, pageRequest);
+    public List<MessageResponse> getChatMessages(Long chatId, Integer limit, Integer offset,
+                                                 Long beforeId, Long afterId) {
+        if (limit == null || limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        if (beforeId != null && afterId != null) {
+            throw new IllegalArgumentException("Use either before or after, not both");
+        }
+
+        List<Message> messages;
+        if (afterId != null) {
+            // Новые сообщения уже идут по возрастанию
+            Message cursor = findCursor(chatId, afterId);
+            messages = messageRepository.findByChatIdAfter(
+                    chatId, cursor.getCreatedAt(), cursor.getMessageId(), PageRequest.of(0, limit));
+        } else {
+            if (beforeId != null) {
+                Message cursor = findCursor(chatId, beforeId);
+                messages = messageRepository.findByChatIdBefore(
+                        chatId, cursor.getCreatedAt(), cursor.getMessageId(), PageRequest.of(0, limit));
+            } else {
+                messages = messageRepository.findByChatIdWithOffset(
+                        chatId, limit, offset != null ? Math.max(offset, 0) : 0);
+            }
 
-        // Переворачиваем список, чтобы старые сообщения были вверху
-        List<Message> reversedMessages = new ArrayList<>(messages);
-        java.util.Collections.reverse(reversedMessages);
+            // Переворачиваем список, чтобы старые сообщения были вверху
+            messages = new ArrayList<>(messages);
+            java.util.Collections.reverse(messages);
+        }
 
-        return reversedMessages.stream()
+        return messages.stream()
                 .map(this::buildMessageResponse)
                 .collect(Collectors.toList());
     }
 
-    @Transactional
+    private Message findCursor(Long chatId, Long messageId) {
+        Message cursor = messageRepository.findById(messageId)
+                .orElseThrow(() -> new RuntimeException("Message not found"));
+        if (!cursor.getChat().getChatId().equals(chatId)) {
+            throw new IllegalArgumentException("Message " + messageId + " does not belong to chat " + chatId);
+        }
+        return cursor;
+    }
+
+    /**
+     * Файлы сначала пишутся во временную папку вне транзакции, затем сообщение и вложения
+     * сохраняются в короткой транзакции. При ошибке загруженные файлы удаляются
+     */
     public MessageResponse sendMessage(Integer senderId, SendMessageRequest request) {
+        List<FileStorageService.StagedFile> stagedFiles = stageAttachments(request.getAttachments());
+
+        try {
+            return transactionTemplate.execute(status -> persistMessage(senderId, request, stagedFiles));
+        } catch (RuntimeException e) {
+            stagedFiles.forEach(fileStorageService::discard);
+            throw e;
+        }
+    }
+
+    private List<FileStorageService.StagedFile> stageAttachments(List<MultipartFile> files) {
+        List<FileStorageService.StagedFile> stagedFiles = new ArrayList<>();
+        if (files == null) {
+            return stagedFiles;
+        }
+
+        try {
+            for (MultipartFile file : files) {
+                stagedFiles.add(fileStorageService.stage(file));
+            }
+        } catch (IOException e) {
+            stagedFiles.forEach(fileStorageService::discard);
+            throw new RuntimeException("Failed to save file", e);
+        }
+        return stagedFiles;
+    }
+
+    private MessageResponse persistMessage(Integer senderId, SendMessageRequest request,
+                                           List<FileStorageService.StagedFile> stagedFiles) {
         // Проверяем существование чата
         Chat chat = chatRepository.findById(request.getChatId())
                 .orElseThrow(() -> new RuntimeException("Chat not found"));
@@ -66,33 +139,41 @@ public class MessageService {
 
         message = messageRepository.save(message);
 
-        // Обрабатываем вложения
-        if (request.getAttachments() != null && !request.getAttachments().isEmpty()) {
-            for (MultipartFile file : request.getAttachments()) {
-                try {
-                    String fileName = fileStorageService.saveFileV2(file);
-
-                    MessageAttachment attachment = MessageAttachment.builder()
-                            .message(message)
-                            .fileName(file.getOriginalFilename())
-                            .filePath(fileName)
-                            .fileType(file.getContentType())
-                            .fileSize(file.getSize())
-                            .build();
-
-                    attachmentRepository.save(attachment);
-                    message.getAttachments().add(attachment);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failed to save file", e);
-                }
+        // Привязываем подготовленные файлы: перенос в папку — это rename, без копирования
+        for (FileStorageService.StagedFile staged : stagedFiles) {
+            String fileUrl;
+            try {
+                fileUrl = fileStorageService.commit(staged, ATTACHMENTS_SUBDIRECTORY);
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to save file", e);
             }
+
+            MessageAttachment attachment = MessageAttachment.builder()
+                    .message(message)
+                    .fileName(staged.getOriginalFilename())
+                    .filePath(fileUrl)
+                    .fileType(staged.getContentType())
+                    .fileSize(staged.getSize())
+                    .checksum(staged.getChecksum())
+                    .build();
+
+            attachmentRepository.save(attachment);
+            message.getAttachments().add(attachment);
         }
 
+        // Непрочитанные у остальных участников
+        chatParticipantRepository.incrementUnreadCount(chat.getChatId(), senderId);
+
         // Обновляем время последнего обновления чата
         chat.setUpdatedAt(message.getCreatedAt());
         chatRepository.save(chat);
 
-        return buildMessageResponse(message);
+        MessageResponse response = buildMessageResponse(message);
+
+        // Рассылаем остальным участникам через WebSocket
+        chatNotificationService.notifyNewMessage(chat.getChatId(), senderId, response);
+
+        return response;
     }
 
     @Transactional
@@ -105,9 +186,16 @@ public class MessageService {
             throw new RuntimeException("You can only delete your own messages");
         }
 
+        if (Boolean.TRUE.equals(message.getIsDeleted())) {
+            return;
+        }
+
         // Помечаем сообщение как удаленное (мягкое удаление)
         message.setIsDeleted(true);
         messageRepository.save(message);
+
+        chatParticipantRepository.decrementUnreadCount(
+                message.getChat().getChatId(), userId, message.getCreatedAt());
     }
 
     private MessageResponse buildMessageResponse(Message message) {
@@ -132,6 +220,7 @@ public class MessageService {
 
         return MessageResponse.builder()
                 .id(message.getMessageId())
+                .chatId(message.getChat().getChatId())
                 .senderId(message.getSender().getUserId())
                 .content(message.getContent())
                 .createdAt(message.getCreatedAt())
@@ -0,0 +1,130 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.MetricRollup.Granularity;
+import com.example.MedSafe.model.MetricRollup.Metric;
+import com.example.MedSafe.model.dto.MetricPoint;
+import com.example.MedSafe.repository.MetricRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * Поддерживает metric_rollups: по расписанию пересчитывает скользящее окно дней (часы из исходных
+ * таблиц, дни из часов), при пустой таблице один раз заполняет всю историю. Графики читают только агрегаты
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MetricRollupService {
+
+    // Первичное заполнение идёт отрезками, чтобы не держать одну огромную транзакцию
+    private static final int BACKFILL_CHUNK_DAYS = 30;
+
+    private final MetricRollupRepository metricRollupRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // Сколько прошлых дней пересчитывать: статусы приёмов и платежей меняются задним числом
+    @Value("${metrics.lookback:P2D}")
+    private Duration lookback;
+
+    // Приёмы назначаются вперёд — будущие дни тоже держим актуальными
+    @Value("${metrics.lookahead:P60D}")
+    private Duration lookahead;
+
+    @Value("${metrics.hourly-retention:P90D}")
+    private Duration hourlyRetention;
+
+    @Value("${metrics.max-hourly-range:P31D}")
+    private Duration maxHourlyRange;
+
+    @Value("${metrics.max-daily-range:P731D}")
+    private Duration maxDailyRange;
+
+    @Scheduled(fixedDelayString = "${metrics.refresh-interval:PT5M}")
+    public void refresh() {
+        LocalDate today = LocalDate.now();
+        if (metricRollupRepository.count() == 0) {
+            backfill(today);
+        }
+
+        LocalDate from = today.minusDays(Math.max(1, lookback.toDays()));
+        LocalDate to = today.plusDays(lookahead.toDays() + 1);
+        rebuild(from, to);
+
+        int pruned = metricRollupRepository.deleteHoursBefore(
+                today.minusDays(hourlyRetention.toDays()).atStartOfDay());
+        if (pruned > 0) {
+            log.debug("Удалено {} почасовых агрегатов старше {}", pruned, hourlyRetention);
+        }
+    }
+
+    /**
+     * Ряд метрики за [from, to) по часам или дням; doctorId == null — по всем врачам.
+     * Диагнозы и анализы агрегируются без врача (doctor_id = 0), фильтр по врачу для них не поддерживается
+     */
+    public List<MetricPoint> getRange(Metric metric, Granularity granularity,
+                                      LocalDate from, LocalDate to, Integer doctorId) {
+        if (doctorId != null && (metric == Metric.DIAGNOSES || metric == Metric.TESTS)) {
+            throw new IllegalArgumentException("doctorId is not supported for " + metric);
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        Duration limit = granularity == Granularity.HOUR ? maxHourlyRange : maxDailyRange;
+        if (Duration.between(from.atStartOfDay(), to.atStartOfDay()).compareTo(limit) > 0) {
+            throw new IllegalArgumentException("Range is too long for " + granularity + " granularity, max " + limit);
+        }
+        return metricRollupRepository.findRange(granularity.name(), metric.name(),
+                from.atStartOfDay(), to.atStartOfDay(), doctorId != null ? doctorId : -1);
+    }
+
+    /**
+     * Пересчёт дней [from, to) одной транзакцией: читатели видят либо старые, либо новые агрегаты
+     */
+    private void rebuild(LocalDate from, LocalDate to) {
+        LocalDateTime start = from.atStartOfDay();
+        LocalDateTime end = to.atStartOfDay();
+        transactionTemplate.executeWithoutResult(status -> {
+            metricRollupRepository.deleteBuckets(Granularity.HOUR.name(), start, end);
+            metricRollupRepository.insertAppointmentHours(start, end);
+            metricRollupRepository.insertDiagnosisHours(start, end);
+            metricRollupRepository.insertTestHours(start, end);
+            metricRollupRepository.insertRevenueHours(start, end);
+
+            metricRollupRepository.deleteBuckets(Granularity.DAY.name(), start, end);
+            metricRollupRepository.insertDaysFromHours(start, end);
+        });
+    }
+
+    private void backfill(LocalDate today) {
+        LocalDateTime first = Stream.of(
+                        metricRollupRepository.findFirstAppointmentDate(),
+                        metricRollupRepository.findFirstDiagnosisCreatedAt(),
+                        metricRollupRepository.findFirstTestCreatedAt(),
+                        metricRollupRepository.findFirstPaidAt())
+                .filter(Objects::nonNull)
+                .min(LocalDateTime::compareTo)
+                .orElse(null);
+        if (first == null) {
+            return;
+        }
+
+        LocalDate from = first.toLocalDate();
+        log.info("Первичное заполнение агрегатов метрик с {}", from);
+        while (from.isBefore(today)) {
+            LocalDate to = from.plusDays(BACKFILL_CHUNK_DAYS);
+            rebuild(from, to.isAfter(today) ? today : to);
+            from = to;
+        }
+    }
+}
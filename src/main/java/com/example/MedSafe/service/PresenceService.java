@@ -0,0 +1,182 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Онлайн-статус пользователей. Источник правды — реестр в памяти: подключения и heartbeat
+ * продлевают присутствие, без heartbeat дольше ttl пользователь считается офлайн.
+ * В users.online/last_seen изменения пишутся пачками по таймеру
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PresenceService {
+
+    private final UserRepository userRepository;
+
+    // userId -> активные сессии и время последней активности
+    private final Map<Integer, Presence> registry = new ConcurrentHashMap<>();
+
+    // Изменения статуса, ещё не записанные в БД: userId -> online
+    private final Map<Integer, Boolean> pendingWrites = new ConcurrentHashMap<>();
+
+    // username из STOMP Principal -> userId, чтобы heartbeat не ходил в БД
+    private final Map<String, Integer> userIdsByUsername = new ConcurrentHashMap<>();
+
+    @Value("${presence.ttl:PT90S}")
+    private Duration ttl;
+
+    /**
+     * Новое подключение пользователя (sessionId может быть null)
+     */
+    public void connect(Integer userId, String sessionId) {
+        long now = System.currentTimeMillis();
+        registry.compute(userId, (id, presence) -> {
+            if (presence == null) {
+                presence = new Presence();
+                pendingWrites.put(id, true);
+            }
+            if (sessionId != null) {
+                presence.sessions.add(sessionId);
+            }
+            presence.lastSeen = now;
+            return presence;
+        });
+    }
+
+    /**
+     * Отключение сессии; без sessionId — всех сессий пользователя
+     */
+    public void disconnect(Integer userId, String sessionId) {
+        registry.computeIfPresent(userId, (id, presence) -> {
+            if (sessionId != null) {
+                presence.sessions.remove(sessionId);
+                if (!presence.sessions.isEmpty()) {
+                    return presence;
+                }
+            }
+            pendingWrites.put(id, false);
+            return null;
+        });
+    }
+
+    public void heartbeat(Integer userId) {
+        connect(userId, null);
+    }
+
+    /**
+     * Heartbeat по username из STOMP-сессии
+     */
+    public void heartbeat(String username) {
+        Integer userId = userIdsByUsername.get(username);
+        if (userId == null) {
+            userId = userRepository.findIdByUsername(username).orElse(null);
+            if (userId == null) {
+                return;
+            }
+            userIdsByUsername.put(username, userId);
+        }
+        heartbeat(userId);
+    }
+
+    public boolean isOnline(Integer userId) {
+        if (userId == null) {
+            return false;
+        }
+        Presence presence = registry.get(userId);
+        return presence != null && !isExpired(presence, System.currentTimeMillis());
+    }
+
+    /**
+     * Кто из перечисленных пользователей онлайн — без обращения к БД
+     */
+    public Map<Integer, Boolean> getOnlineStatus(Collection<Integer> userIds) {
+        Map<Integer, Boolean> result = new LinkedHashMap<>();
+        for (Integer userId : userIds) {
+            result.put(userId, isOnline(userId));
+        }
+        return result;
+    }
+
+    /**
+     * Убирает пользователей без heartbeat и пишет накопленные изменения в БД
+     */
+    @Scheduled(fixedDelayString = "${presence.flush-interval:PT5S}")
+    public void flush() {
+        expireStale();
+
+        List<Integer> cameOnline = new ArrayList<>();
+        List<Integer> wentOffline = new ArrayList<>();
+        for (Integer userId : pendingWrites.keySet()) {
+            Boolean online = pendingWrites.remove(userId);
+            if (online != null) {
+                (online ? cameOnline : wentOffline).add(userId);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        write(cameOnline, true, now);
+        write(wentOffline, false, now);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resetOnlineStatus() {
+        int updated = userRepository.resetOnline();
+        if (updated > 0) {
+            log.info("Сброшен онлайн-статус у {} пользователей после перезапуска", updated);
+        }
+    }
+
+    private void expireStale() {
+        long now = System.currentTimeMillis();
+        for (Integer userId : registry.keySet()) {
+            // Проверяем повторно под блокировкой ключа: heartbeat мог прийти после обхода
+            registry.computeIfPresent(userId, (id, presence) -> {
+                if (!isExpired(presence, now)) {
+                    return presence;
+                }
+                pendingWrites.put(id, false);
+                return null;
+            });
+        }
+    }
+
+    private void write(List<Integer> userIds, boolean online, LocalDateTime lastSeen) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            userRepository.updatePresence(userIds, online, lastSeen);
+        } catch (RuntimeException e) {
+            // Вернём в очередь, если за это время не появилось более свежего статуса
+            userIds.forEach(userId -> pendingWrites.putIfAbsent(userId, online));
+            log.warn("Не удалось записать онлайн-статус для {} пользователей: {}", userIds.size(), e.getMessage());
+        }
+    }
+
+    private boolean isExpired(Presence presence, long now) {
+        return now - presence.lastSeen > ttl.toMillis();
+    }
+
+    private static final class Presence {
+        private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+        private volatile long lastSeen;
+    }
+}
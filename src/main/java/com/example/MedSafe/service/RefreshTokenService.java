@@ -0,0 +1,126 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.RefreshToken;
+import com.example.MedSafe.repository.RefreshTokenRepository;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Ротируемые refresh-токены: каждый обмен выдаёт новый токен и гасит старый.
+ * Повторное предъявление уже обменянного токена считается утечкой — отзывается вся цепочка
+ */
+@Service
+@RequiredArgsConstructor
+public class RefreshTokenService {
+    private static final Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final int TOKEN_BYTES = 32;
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private final RefreshTokenRepository refreshTokenRepository;
+
+    @Value("${jwt.refresh-ttl:P30D}")
+    private Duration refreshTtl;
+
+    /**
+     * Новый refresh-токен для пользователя (новая цепочка — при входе)
+     */
+    public String issue(Integer userId) {
+        return create(userId, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Обменивает refresh-токен на новый. Возвращает новый токен и владельца
+     */
+    public IssuedToken rotate(String rawToken) {
+        RefreshToken current = find(rawToken);
+        LocalDateTime now = LocalDateTime.now();
+
+        if (current.getRevokedAt() != null || current.getExpiresAt().isBefore(now)) {
+            throw new RuntimeException("Refresh token expired or revoked");
+        }
+        // Токен уже обменян (или его только что обменял параллельный запрос) — цепочка скомпрометирована
+        if (current.getUsedAt() != null || refreshTokenRepository.markUsed(current.getRefreshTokenId(), now) == 0) {
+            refreshTokenRepository.revokeFamily(current.getFamilyId(), now);
+            logger.warn("Повторное использование refresh-токена userId={}, цепочка {} отозвана",
+                    current.getUserId(), current.getFamilyId());
+            throw new RuntimeException("Refresh token reuse detected");
+        }
+
+        return new IssuedToken(current.getUserId(), create(current.getUserId(), current.getFamilyId()));
+    }
+
+    /**
+     * Отзывает цепочку, которой принадлежит токен (выход)
+     */
+    public void revoke(String rawToken) {
+        refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId(), LocalDateTime.now()));
+    }
+
+    @Scheduled(cron = "${jwt.refresh-cleanup-cron:0 30 3 * * *}")
+    public void deleteExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            logger.info("Удалено {} истёкших refresh-токенов", deleted);
+        }
+    }
+
+    private String create(Integer userId, String familyId) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        SECURE_RANDOM.nextBytes(bytes);
+        String rawToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshToken token = new RefreshToken();
+        token.setUserId(userId);
+        token.setTokenHash(hash(rawToken));
+        token.setFamilyId(familyId);
+        token.setExpiresAt(LocalDateTime.now().plus(refreshTtl));
+        refreshTokenRepository.save(token);
+        return rawToken;
+    }
+
+    private RefreshToken find(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            throw new IllegalArgumentException("Refresh token is required");
+        }
+        return refreshTokenRepository.findByTokenHash(hash(rawToken))
+                .orElseThrow(() -> new RuntimeException("Invalid refresh token"));
+    }
+
+    private static String hash(String rawToken) {
+        return RsaKeyCache.fingerprint(rawToken.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Результат ротации: владелец и новый refresh-токен
+     */
+    public static final class IssuedToken {
+        private final Integer userId;
+        private final String token;
+
+        private IssuedToken(Integer userId, String token) {
+            this.userId = userId;
+            this.token = token;
+        }
+
+        public Integer getUserId() {
+            return userId;
+        }
+
+        public String getToken() {
+            return token;
+        }
+    }
+}
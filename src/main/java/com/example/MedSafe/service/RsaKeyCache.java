@@ -0,0 +1,131 @@
+package com.example.MedSafe.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Кэш разобранных RSA-ключей, чтобы не делать Base64 + KeyFactory на каждую операцию.
+ * Публичные ключи — по userId (сбрасываются при перегенерации ключей),
+ * приватные (приходят от клиента) — по SHA-256 от строки ключа, с коротким временем жизни
+ */
+@Component
+public class RsaKeyCache {
+    private static final Logger logger = LoggerFactory.getLogger(RsaKeyCache.class);
+
+    private static final String RSA_ALGORITHM = "RSA";
+    private static final int MAX_PUBLIC_KEYS = 10_000;
+    private static final int MAX_PRIVATE_KEYS = 1_000;
+    private static final long PRIVATE_KEY_TTL_MILLIS = 5 * 60 * 1000;
+
+    private final Map<Integer, CachedPublicKey> publicKeys = lruMap(MAX_PUBLIC_KEYS);
+    private final Map<String, CachedPrivateKey> privateKeys = lruMap(MAX_PRIVATE_KEYS);
+
+    /**
+     * Публичный ключ пользователя. Если строка ключа в БД поменялась — разбирается заново
+     */
+    public PublicKey getPublicKey(Integer userId, String encodedKey) throws GeneralSecurityException {
+        synchronized (publicKeys) {
+            CachedPublicKey cached = publicKeys.get(userId);
+            if (cached != null && cached.encoded.equals(encodedKey)) {
+                return cached.key;
+            }
+        }
+
+        byte[] publicBytes = Base64.getDecoder().decode(encodedKey);
+        PublicKey key = KeyFactory.getInstance(RSA_ALGORITHM).generatePublic(new X509EncodedKeySpec(publicBytes));
+
+        synchronized (publicKeys) {
+            publicKeys.put(userId, new CachedPublicKey(encodedKey, key));
+        }
+        return key;
+    }
+
+    /**
+     * Приватный ключ из Base64 (PKCS#8, без PEM-заголовков)
+     */
+    public PrivateKey getPrivateKey(String encodedKey) throws GeneralSecurityException {
+        String fingerprint = fingerprint(Objects.requireNonNull(encodedKey).getBytes(StandardCharsets.US_ASCII));
+        long now = System.currentTimeMillis();
+
+        synchronized (privateKeys) {
+            CachedPrivateKey cached = privateKeys.get(fingerprint);
+            if (cached != null && cached.expiresAt > now) {
+                return cached.key;
+            }
+        }
+
+        byte[] privateBytes = Base64.getDecoder().decode(encodedKey);
+        PrivateKey key = KeyFactory.getInstance(RSA_ALGORITHM).generatePrivate(new PKCS8EncodedKeySpec(privateBytes));
+
+        synchronized (privateKeys) {
+            privateKeys.put(fingerprint, new CachedPrivateKey(key, now + PRIVATE_KEY_TTL_MILLIS));
+        }
+        return key;
+    }
+
+    /**
+     * Сбрасывает ключи пользователя после перегенерации
+     */
+    public void invalidate(Integer userId) {
+        synchronized (publicKeys) {
+            publicKeys.remove(userId);
+        }
+        logger.debug("Кэш ключей сброшен для userId={}", userId);
+    }
+
+    /**
+     * SHA-256 в hex — отпечаток ключа для ключей кэша и сравнения
+     */
+    public static String fingerprint(byte[] data) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static <K, V> Map<K, V> lruMap(int maxEntries) {
+        return new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static final class CachedPublicKey {
+        private final String encoded;
+        private final PublicKey key;
+
+        private CachedPublicKey(String encoded, PublicKey key) {
+            this.encoded = encoded;
+            this.key = key;
+        }
+    }
+
+    private static final class CachedPrivateKey {
+        private final PrivateKey key;
+        private final long expiresAt;
+
+        private CachedPrivateKey(PrivateKey key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
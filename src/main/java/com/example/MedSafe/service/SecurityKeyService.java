@@ -10,7 +10,6 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.util.Base64;
 
 @Service
@@ -19,6 +18,9 @@ public class SecurityKeyService {
     private static final Logger logger = LoggerFactory.getLogger(SecurityKeyService.class);
     private final SecurityKeyRepository securityKeyRepository;
     private final UserRepository userRepository;
+    private final RsaKeyCache rsaKeyCache;
+    private final DataKeyService dataKeyService;
+    private final KeyPairPool keyPairPool;
 
     public SecurityKey generateKeyPair(Integer userId) throws Exception {
         logger.info("Попытка генерации ключей для userId: {}", userId);
@@ -45,11 +47,9 @@ public class SecurityKeyService {
 //            throw new IllegalStateException("Ключи для пользователя уже существуют. Повторная генерация невозможна, чтобы сохранить доступ к зашифрованным данным.");
         }
 
-        // Генерация новой пары ключей
+        // Пара из пула заранее сгенерированных ключей (генерация в потоке запроса — только если пул пуст)
         logger.info("Генерация новой пары ключей для userId: {}", userId);
-        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-        keyGen.initialize(2048);
-        KeyPair pair = keyGen.generateKeyPair();
+        KeyPair pair = keyPairPool.take();
 
         String publicKey = Base64.getEncoder().encodeToString(pair.getPublic().getEncoded());
         String privateKey = Base64.getEncoder().encodeToString(pair.getPrivate().getEncoded());
@@ -62,6 +62,9 @@ public class SecurityKeyService {
 
         // Сохранение ключа
         SecurityKey savedKey = securityKeyRepository.save(key);
+        // Старый публичный ключ больше не должен использоваться для шифрования
+        rsaKeyCache.invalidate(userId);
+        dataKeyService.invalidate(userId);
         logger.info("Ключ успешно создан: userId={}, publicKey={}",
                 savedKey.getUser().getUserId(), savedKey.getPublicKey());
         return savedKey;
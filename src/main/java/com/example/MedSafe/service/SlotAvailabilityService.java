@@ -0,0 +1,362 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.Doctor;
+import com.example.MedSafe.model.dto.DoctorFreeSlots;
+import com.example.MedSafe.repository.AppointmentRepository;
+import com.example.MedSafe.repository.DoctorRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Свободные слоты врачей за период: занятость каждого дня — битовая карта слотов, которая строится
+ * одним запросом записей за весь период и кэшируется по (врач, день). Кэш сбрасывается при изменении записей
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SlotAvailabilityService {
+
+    private static final int MAX_CACHED_DAYS = 10_000;
+    // Общая карта дня без записей: только читается
+    private static final BitSet EMPTY_DAY = new BitSet();
+
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorRepository doctorRepository;
+
+    @Value("${appointments.slots.work-start:09:00}")
+    private String defaultWorkStart;
+
+    @Value("${appointments.slots.work-end:18:00}")
+    private String defaultWorkEnd;
+
+    @Value("${appointments.slots.slot-minutes:30}")
+    private int defaultSlotMinutes;
+
+    @Value("${appointments.slots.working-days:MONDAY,TUESDAY,WEDNESDAY,THURSDAY,FRIDAY}")
+    private String[] workingDayNames;
+
+    @Value("${appointments.slots.max-range:P31D}")
+    private Duration maxRange;
+
+    @Value("${appointments.slots.cache-ttl:PT1M}")
+    private Duration cacheTtl;
+
+    private Schedule defaultSchedule;
+    private Set<DayOfWeek> workingDays;
+
+    // (doctorId, день) -> занятые слоты дня
+    private final Map<Long, CachedDay> days = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CachedDay> eldest) {
+            return size() > MAX_CACHED_DAYS;
+        }
+    };
+
+    // Растёт при каждом сбросе: результат запроса, начатого до сброса, в кэш не кладём
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        defaultSchedule = new Schedule(LocalTime.parse(defaultWorkStart), LocalTime.parse(defaultWorkEnd),
+                defaultSlotMinutes);
+        workingDays = EnumSet.noneOf(DayOfWeek.class);
+        for (String day : workingDayNames) {
+            workingDays.add(DayOfWeek.valueOf(day.trim().toUpperCase()));
+        }
+    }
+
+    /**
+     * Свободные слоты врача за [from, to)
+     */
+    public DoctorFreeSlots getFreeSlots(Integer doctorId, LocalDate from, LocalDate to) {
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new IllegalArgumentException("Doctor not found"));
+        return getFreeSlots(List.of(doctor), from, to).get(0);
+    }
+
+    /**
+     * Свободные слоты всех врачей специальности за [from, to)
+     */
+    public List<DoctorFreeSlots> getFreeSlotsBySpecialty(String specialty, LocalDate from, LocalDate to) {
+        return getFreeSlots(doctorRepository.findBySpecialtyIgnoreCase(specialty), from, to);
+    }
+
+    /**
+     * Проверяет время записи и возвращает длину слота в минутах. Сетка обязательна только для врачей
+     * с настроенным расписанием (work_start/work_end/slot_minutes): start должен быть будущим началом
+     * слота в рабочий день. Для остальных подходит любое время, занятость проверяет пересечение записей
+     */
+    public int requireBookableSlot(Doctor doctor, LocalDateTime start) {
+        if (start == null) {
+            throw new IllegalArgumentException("Appointment date is required");
+        }
+        if (!hasOwnSchedule(doctor)) {
+            return defaultSchedule.slotMinutes;
+        }
+        if (!start.isAfter(LocalDateTime.now())) {
+            throw new IllegalArgumentException("Appointment date must be in the future");
+        }
+        if (!workingDays.contains(start.getDayOfWeek())) {
+            throw new IllegalArgumentException("Doctor does not work on " + start.getDayOfWeek());
+        }
+        Schedule schedule = scheduleOf(doctor);
+        if (schedule.slotIndex(start.toLocalTime()) < 0) {
+            throw new IllegalArgumentException("Appointment must start at one of the doctor's slots ("
+                    + schedule.start + "-" + schedule.end + ", every " + schedule.slotMinutes + " min)");
+        }
+        return schedule.slotMinutes;
+    }
+
+    private static boolean hasOwnSchedule(Doctor doctor) {
+        return doctor.getWorkStart() != null || doctor.getWorkEnd() != null || doctor.getSlotMinutes() != null;
+    }
+
+    /**
+     * Длина слота врача в минутах (своя или по умолчанию)
+     */
+    public int slotMinutesOf(Doctor doctor) {
+        return scheduleOf(doctor).slotMinutes;
+    }
+
+    /**
+     * Сбрасывает кэш дня врача — вызывается при создании, переносе и отмене записи.
+     * Внутри транзакции сброс откладывается до коммита: запрос слотов между сбросом и коммитом
+     * прочитал бы старые строки и положил их в кэш уже под новым поколением
+     */
+    public void invalidate(Integer doctorId, LocalDateTime appointmentDate) {
+        if (doctorId == null || appointmentDate == null) {
+            return;
+        }
+        long key = cacheKey(doctorId, appointmentDate.toLocalDate());
+        runAfterCommit(() -> {
+            invalidations.incrementAndGet();
+            synchronized (days) {
+                days.remove(key);
+            }
+        });
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private List<DoctorFreeSlots> getFreeSlots(List<Doctor> doctors, LocalDate from, LocalDate to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("'from' must be before 'to'");
+        }
+        if (Duration.between(from.atStartOfDay(), to.atStartOfDay()).compareTo(maxRange) > 0) {
+            throw new IllegalArgumentException("Range is too long, max " + maxRange);
+        }
+
+        Map<Integer, Schedule> schedules = new HashMap<>();
+        for (Doctor doctor : doctors) {
+            schedules.put(doctor.getDoctorId(), scheduleOf(doctor));
+        }
+        Map<Long, BitSet> busy = loadBusyDays(schedules, from, to);
+
+        LocalDateTime now = LocalDateTime.now();
+        List<DoctorFreeSlots> result = new ArrayList<>(doctors.size());
+        for (Doctor doctor : doctors) {
+            Schedule schedule = schedules.get(doctor.getDoctorId());
+            Map<LocalDate, List<LocalTime>> freeSlots = new LinkedHashMap<>();
+            for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+                if (workingDays.contains(day.getDayOfWeek())) {
+                    freeSlots.put(day, schedule.freeSlots(day, busy.get(cacheKey(doctor.getDoctorId(), day)), now));
+                }
+            }
+            result.add(DoctorFreeSlots.builder()
+                    .doctorId(doctor.getDoctorId())
+                    .specialty(doctor.getSpecialty())
+                    .slotMinutes(schedule.slotMinutes)
+                    .freeSlots(freeSlots)
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * Карты занятости рабочих дней: из кэша, а недостающие — одним запросом записей за весь период
+     */
+    private Map<Long, BitSet> loadBusyDays(Map<Integer, Schedule> schedules, LocalDate from, LocalDate to) {
+        Map<Long, BitSet> busy = new HashMap<>();
+        Set<Integer> missingDoctors = new HashSet<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (days) {
+            for (Map.Entry<Integer, Schedule> entry : schedules.entrySet()) {
+                for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+                    if (!workingDays.contains(day.getDayOfWeek())) {
+                        continue;
+                    }
+                    long key = cacheKey(entry.getKey(), day);
+                    CachedDay cached = days.get(key);
+                    if (cached != null && cached.expiresAt > now && cached.schedule.equals(entry.getValue())) {
+                        busy.put(key, cached.busy);
+                    } else {
+                        missingDoctors.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        if (missingDoctors.isEmpty()) {
+            return busy;
+        }
+
+        long generation = invalidations.get();
+        Map<Long, BitSet> loaded = new HashMap<>();
+        for (Object[] row : appointmentRepository.findActiveTimesByDoctorIdsInRange(
+                missingDoctors, from.atStartOfDay(), to.atStartOfDay(), "cancelled")) {
+            Integer doctorId = (Integer) row[0];
+            LocalDateTime appointmentDate = (LocalDateTime) row[1];
+            BitSet dayBusy = loaded.computeIfAbsent(cacheKey(doctorId, appointmentDate.toLocalDate()), k -> new BitSet());
+            schedules.get(doctorId).markBusy(dayBusy, appointmentDate.toLocalTime());
+        }
+
+        synchronized (days) {
+            boolean cacheable = generation == invalidations.get();
+            long expiresAt = now + cacheTtl.toMillis();
+            for (Integer doctorId : missingDoctors) {
+                Schedule schedule = schedules.get(doctorId);
+                for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+                    long key = cacheKey(doctorId, day);
+                    BitSet dayBusy = loaded.getOrDefault(key, EMPTY_DAY);
+                    busy.put(key, dayBusy);
+                    if (cacheable && workingDays.contains(day.getDayOfWeek())) {
+                        days.put(key, new CachedDay(schedule, dayBusy, expiresAt));
+                    }
+                }
+            }
+        }
+        return busy;
+    }
+
+    private Schedule scheduleOf(Doctor doctor) {
+        LocalTime start = doctor.getWorkStart() != null ? doctor.getWorkStart() : defaultSchedule.start;
+        LocalTime end = doctor.getWorkEnd() != null ? doctor.getWorkEnd() : defaultSchedule.end;
+        int slotMinutes = doctor.getSlotMinutes() != null ? doctor.getSlotMinutes() : defaultSchedule.slotMinutes;
+        return new Schedule(start, end, slotMinutes);
+    }
+
+    private static long cacheKey(Integer doctorId, LocalDate day) {
+        return ((long) doctorId << 32) | (day.toEpochDay() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Рабочий день врача: слоты по slotMinutes от start до end, бит i — слот start + i * slotMinutes
+     */
+    private static final class Schedule {
+        private final LocalTime start;
+        private final LocalTime end;
+        private final int slotMinutes;
+        private final int slotCount;
+
+        private Schedule(LocalTime start, LocalTime end, int slotMinutes) {
+            if (slotMinutes <= 0) {
+                throw new IllegalStateException("Slot length must be positive");
+            }
+            this.start = start;
+            this.end = end;
+            this.slotMinutes = slotMinutes;
+            this.slotCount = Math.max(0, (int) Duration.between(start, end).toMinutes() / slotMinutes);
+        }
+
+        /**
+         * Запись длится один слот: занимает все слоты, которые пересекает [time, time + slotMinutes)
+         */
+        private void markBusy(BitSet busy, LocalTime time) {
+            int offset = time.toSecondOfDay() / 60 - start.toSecondOfDay() / 60;
+            int first = Math.floorDiv(offset, slotMinutes);
+            int last = Math.floorDiv(offset + slotMinutes - 1, slotMinutes);
+            int from = Math.max(first, 0);
+            int to = Math.min(last + 1, slotCount);
+            if (from < to) {
+                busy.set(from, to);
+            }
+        }
+
+        /**
+         * Номер слота, который начинается ровно в time, или -1
+         */
+        private int slotIndex(LocalTime time) {
+            if (time.getSecond() != 0 || time.getNano() != 0) {
+                return -1;
+            }
+            int offset = time.toSecondOfDay() / 60 - start.toSecondOfDay() / 60;
+            if (offset < 0 || offset % slotMinutes != 0 || offset / slotMinutes >= slotCount) {
+                return -1;
+            }
+            return offset / slotMinutes;
+        }
+
+        private List<LocalTime> freeSlots(LocalDate day, BitSet busy, LocalDateTime now) {
+            List<LocalTime> free = new ArrayList<>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                LocalTime time = start.plusMinutes((long) slot * slotMinutes);
+                // Прошедшие слоты не предлагаем
+                if ((busy == null || !busy.get(slot)) && day.atTime(time).isAfter(now)) {
+                    free.add(time);
+                }
+            }
+            return free;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Schedule other)) {
+                return false;
+            }
+            return slotMinutes == other.slotMinutes && start.equals(other.start) && end.equals(other.end);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(start, end, slotMinutes);
+        }
+    }
+
+    private static final class CachedDay {
+        private final Schedule schedule;
+        private final BitSet busy;
+        private final long expiresAt;
+
+        private CachedDay(Schedule schedule, BitSet busy, long expiresAt) {
+            this.schedule = schedule;
+            this.busy = busy;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -10,16 +10,15 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
@@ -28,6 +27,8 @@ public class TestService {
 
     private final TestRepository testRepository;
     private final PatientRepository patientRepository;
+    private final FileStorageService fileStorageService;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${file.upload-dir:uploads}")
     private String uploadDir;
@@ -35,11 +36,6 @@ public class TestService {
     @Value("${server.port:8080}")
     private String serverPort;
 
-    // URL для доступа к файлам (можно настроить в application.properties)
-    @Value("${file.base-url:http://localhost:8080}")
-    private String baseUrl;
-
-    @Transactional
     public Test createTest(TestCreateRequest request) throws IOException {
         // Проверяем существование пациента
         Patient patient = patientRepository.findById(request.getPatientId())
@@ -48,33 +44,36 @@ public class TestService {
         // Создаем папки если не существуют
         createUploadDirectories();
 
-        // Сохраняем файлы
-        String fileUrl = null;
-        String imageUrl = null;
+        // Загружаем файлы во временную папку вне транзакции
+        FileStorageService.StagedFile stagedFile = stageIfPresent(request.getFile());
+        FileStorageService.StagedFile stagedImage = stageIfPresent(request.getImage());
 
-        if (request.getFile() != null && !request.getFile().isEmpty()) {
-            fileUrl = saveFile(request.getFile(), "documents");
-        }
-
-        if (request.getImage() != null && !request.getImage().isEmpty()) {
-            imageUrl = saveFile(request.getImage(), "images");
+        try {
+            return transactionTemplate.execute(status -> {
+                String fileUrl = commitIfPresent(stagedFile, "documents");
+                String imageUrl = commitIfPresent(stagedImage, "images");
+
+                // Создаем тест
+                Test test = new Test();
+                test.setTestName(request.getTestName());
+                test.setResult(request.getResult());
+                test.setTestDate(request.getTestDate() != null ? request.getTestDate() : LocalDateTime.now());
+                test.setPatient(patient);
+                test.setFileUrl(fileUrl);
+                test.setImageUrl(imageUrl);
+                test.setCreatedAt(LocalDateTime.now());
+
+                Test savedTest = testRepository.save(test);
+                log.info("Тест создан успешно: ID={}, FileURL={}, ImageURL={}",
+                        savedTest.getTestId(), fileUrl, imageUrl);
+
+                return savedTest;
+            });
+        } catch (RuntimeException e) {
+            discardIfPresent(stagedFile);
+            discardIfPresent(stagedImage);
+            throw e;
         }
-
-        // Создаем тест
-        Test test = new Test();
-        test.setTestName(request.getTestName());
-        test.setResult(request.getResult());
-        test.setTestDate(request.getTestDate() != null ? request.getTestDate() : LocalDateTime.now());
-        test.setPatient(patient);
-        test.setFileUrl(fileUrl);
-        test.setImageUrl(imageUrl);
-        test.setCreatedAt(LocalDateTime.now());
-
-        Test savedTest = testRepository.save(test);
-        log.info("Тест создан успешно: ID={}, FileURL={}, ImageURL={}",
-                savedTest.getTestId(), fileUrl, imageUrl);
-
-        return savedTest;
     }
 
     private void createUploadDirectories() throws IOException {
@@ -96,27 +95,31 @@ public class TestService {
         }
     }
 
-    private String saveFile(MultipartFile file, String subdirectory) throws IOException {
-        // Генерируем уникальное имя файла
-        String originalFilename = file.getOriginalFilename();
-        String fileExtension = "";
-
-        if (originalFilename != null && originalFilename.contains(".")) {
-            fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+    private FileStorageService.StagedFile stageIfPresent(MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) {
+            return null;
         }
+        return fileStorageService.stage(file);
+    }
 
-        String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
-
-        // Путь для сохранения
-        Path targetPath = Paths.get(uploadDir, subdirectory, uniqueFilename);
-
-        // Копируем файл
-        Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
-
-        log.info("Файл сохранен: {}", targetPath.toAbsolutePath());
+    private String commitIfPresent(FileStorageService.StagedFile staged, String subdirectory) {
+        if (staged == null) {
+            return null;
+        }
+        try {
+            // Возвращаем URL для доступа к файлу через API
+            String fileUrl = fileStorageService.commit(staged, subdirectory);
+            log.info("Файл сохранен: {}", staged.getPath().toAbsolutePath());
+            return fileUrl;
+        } catch (IOException e) {
+            throw new RuntimeException("Не удалось сохранить файл", e);
+        }
+    }
 
-        // Возвращаем URL для доступа к файлу через API
-        return baseUrl + "/api/v1/files/" + subdirectory + "/" + uniqueFilename;
+    private void discardIfPresent(FileStorageService.StagedFile staged) {
+        if (staged != null) {
+            fileStorageService.discard(staged);
+        }
     }
 
     public List<Test> getTestsByPatientId(Integer patientId) {
@@ -144,68 +147,64 @@ public class TestService {
         log.info("Тест удален: ID={}", testId);
     }
 
-    private void deleteFileFromUrl(String fileUrl) throws IOException {
+    private void deleteFileFromUrl(String fileUrl) {
         try {
-            // Извлекаем путь файла из URL
-            // Пример: http://localhost:8080/api/v1/files/documents/uuid.pdf
-            String[] parts = fileUrl.split("/");
-            if (parts.length < 2) {
-                log.warn("Неверный формат URL файла: {}", fileUrl);
-                return;
-            }
-
-            String filename = parts[parts.length - 1];
-            String subdirectory = parts[parts.length - 2];
-
-            Path filePath = Paths.get(uploadDir, subdirectory, filename);
-
-            if (Files.exists(filePath)) {
-                Files.delete(filePath);
-                log.info("Файл удален: {}", filePath.toAbsolutePath());
-            } else {
-                log.warn("Файл не найден для удаления: {}", filePath.toAbsolutePath());
-            }
+            fileStorageService.deleteByUrl(fileUrl);
         } catch (Exception e) {
             log.error("Ошибка при удалении файла: {}", fileUrl, e);
         }
     }
 
-    @Transactional
     public Test updateTest(Integer testId, TestCreateRequest request) throws IOException {
         Test existingTest = getTestById(testId);
 
-        // Обновляем текстовые поля
-        if (request.getTestName() != null) {
-            existingTest.setTestName(request.getTestName());
-        }
-        if (request.getResult() != null) {
-            existingTest.setResult(request.getResult());
-        }
-        if (request.getTestDate() != null) {
-            existingTest.setTestDate(request.getTestDate());
-        }
+        // Загружаем новые файлы во временную папку вне транзакции
+        FileStorageService.StagedFile stagedFile = stageIfPresent(request.getFile());
+        FileStorageService.StagedFile stagedImage = stageIfPresent(request.getImage());
 
-        // Обновляем файлы если предоставлены
-        if (request.getFile() != null && !request.getFile().isEmpty()) {
-            // Удаляем старый файл
-            if (existingTest.getFileUrl() != null) {
-                deleteFileFromUrl(existingTest.getFileUrl());
-            }
-            // Сохраняем новый
-            String newFileUrl = saveFile(request.getFile(), "documents");
-            existingTest.setFileUrl(newFileUrl);
+        String oldFileUrl = existingTest.getFileUrl();
+        String oldImageUrl = existingTest.getImageUrl();
+
+        Test savedTest;
+        try {
+            savedTest = transactionTemplate.execute(status -> {
+                // Обновляем текстовые поля
+                if (request.getTestName() != null) {
+                    existingTest.setTestName(request.getTestName());
+                }
+                if (request.getResult() != null) {
+                    existingTest.setResult(request.getResult());
+                }
+                if (request.getTestDate() != null) {
+                    existingTest.setTestDate(request.getTestDate());
+                }
+
+                // Обновляем файлы если предоставлены
+                if (stagedFile != null) {
+                    existingTest.setFileUrl(commitIfPresent(stagedFile, "documents"));
+                }
+                if (stagedImage != null) {
+                    existingTest.setImageUrl(commitIfPresent(stagedImage, "images"));
+                }
+
+                return testRepository.save(existingTest);
+            });
+        } catch (RuntimeException e) {
+            discardIfPresent(stagedFile);
+            discardIfPresent(stagedImage);
+            throw e;
         }
 
-        if (request.getImage() != null && !request.getImage().isEmpty()) {
-            // Удаляем старое изображение
-            if (existingTest.getImageUrl() != null) {
-                deleteFileFromUrl(existingTest.getImageUrl());
+        // Старые файлы удаляем только после успешного сохранения
+        transactionTemplate.executeWithoutResult(status -> {
+            if (stagedFile != null && oldFileUrl != null) {
+                deleteFileFromUrl(oldFileUrl);
             }
-            // Сохраняем новое
-            String newImageUrl = saveFile(request.getImage(), "images");
-            existingTest.setImageUrl(newImageUrl);
-        }
+            if (stagedImage != null && oldImageUrl != null) {
+                deleteFileFromUrl(oldImageUrl);
+            }
+        });
 
-        return testRepository.save(existingTest);
+        return savedTest;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,248 @@
+package com.example.MedSafe.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Уменьшенные копии изображений (thumb/preview). Создаются в фоне после загрузки и лежат
+ * рядом с оригиналом: name.ext.thumb.jpg. Если файла ещё нет — генерируются на лету
+ * и держатся в LRU-кэше в памяти
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    public static final String CONTENT_TYPE = "image/jpeg";
+
+    // Размер — максимальная сторона в пикселях
+    private static final Map<String, Integer> SIZES = Map.of(
+            "thumb", 256,
+            "preview", 1024
+    );
+
+    // Защита от "бомб": слишком большие изображения не декодируем
+    private static final long MAX_SOURCE_PIXELS = 100_000_000L;
+
+    private final ExecutorService executor;
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, byte[]> cache;
+    private long cachedBytes;
+
+    @Value("${file.thumbnails.cache-bytes:33554432}")
+    private long cacheLimitBytes;
+
+    public ThumbnailService() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // Небольшая очередь: при перегрузке превью создадутся на лету при первом запросе.
+        // core = max: с ограниченной очередью потоки сверх core появились бы только при полной очереди
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1000),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        // Простаивающие потоки всё равно завершаются через 60 секунд
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.cache = new LinkedHashMap<>(64, 0.75f, true);
+    }
+
+    public static boolean isSupportedSize(String size) {
+        return size != null && SIZES.containsKey(size);
+    }
+
+    public static boolean isImage(String contentType) {
+        return contentType != null && contentType.startsWith("image/") && !contentType.contains("svg");
+    }
+
+    /**
+     * Путь к уменьшенной копии рядом с оригиналом
+     */
+    public static Path variantPath(Path original, String size) {
+        return original.resolveSibling(original.getFileName() + "." + size + ".jpg");
+    }
+
+    /**
+     * Ставит в очередь создание всех размеров для только что загруженного изображения
+     */
+    public void generateAsync(Path original, String contentType) {
+        if (!isImage(contentType) || !inFlight.add(original)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    SIZES.keySet().forEach(size -> writeVariant(original, size));
+                } finally {
+                    inFlight.remove(original);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(original);
+            log.warn("Очередь превью переполнена, пропускаем: {}", original);
+        }
+    }
+
+    /**
+     * Уменьшенная копия на лету. null — файл не изображение или уже не больше нужного размера
+     */
+    public byte[] render(Path original, String size) throws IOException {
+        String key = original + "|" + size + "|" + Files.getLastModifiedTime(original).toMillis();
+        byte[] cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        byte[] data = resize(original, SIZES.get(size));
+        if (data != null) {
+            putCached(key, data);
+            // Сохраняем на диск, чтобы следующий запрос отдал готовый файл
+            generateAsync(original, CONTENT_TYPE);
+        }
+        return data;
+    }
+
+    public void deleteVariants(Path original) {
+        for (String size : SIZES.keySet()) {
+            try {
+                Files.deleteIfExists(variantPath(original, size));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить превью {}: {}", original, e.getMessage());
+            }
+        }
+    }
+
+    private void writeVariant(Path original, String size) {
+        Path target = variantPath(original, size);
+        if (Files.exists(target)) {
+            return;
+        }
+        try {
+            byte[] data = resize(original, SIZES.get(size));
+            if (data == null) {
+                return;
+            }
+            Path temp = target.resolveSibling(target.getFileName() + ".part");
+            Files.write(temp, data);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось создать превью {} для {}: {}", size, original, e.getMessage());
+        }
+    }
+
+    private byte[] resize(Path original, int maxSide) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (Math.max(width, height) <= maxSide) {
+                    return null;
+                }
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    throw new IOException("Image too large: " + width + "x" + height);
+                }
+
+                // Прореживание при чтении: большое фото не декодируется целиком в полном размере
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (maxSide * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                BufferedImage source = reader.read(0, param);
+
+                double scale = (double) maxSide / Math.max(source.getWidth(), source.getHeight());
+                int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+                int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+                BufferedImage target = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = target.createGraphics();
+                try {
+                    // Прозрачность в JPEG не поддерживается — подкладываем белый фон
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, targetWidth, targetHeight);
+                    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                            RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                    graphics.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+                } finally {
+                    graphics.dispose();
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(target, "jpg", out);
+                return out.toByteArray();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private synchronized byte[] getCached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void putCached(String key, byte[] data) {
+        if (data.length > cacheLimitBytes) {
+            return;
+        }
+        byte[] previous = cache.put(key, data);
+        if (previous != null) {
+            cachedBytes -= previous.length;
+        }
+        cachedBytes += data.length;
+
+        // Вытесняем давно не использованные
+        Iterator<byte[]> eldest = cache.values().iterator();
+        while (cachedBytes > cacheLimitBytes && eldest.hasNext()) {
+            cachedBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
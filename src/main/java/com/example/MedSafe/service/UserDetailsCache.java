@@ -0,0 +1,96 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.CustomUserDetails;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш пользователей для JwtAuthFilter, чтобы не читать users + roles на каждый запрос.
+ * Ключ — subject и id токена (jti); запись живёт не дольше ttl и сбрасывается
+ * при удалении пользователя или смене его ролей.
+ * Попадание в кэш — без блокировок; промах грузит пользователя один раз на ключ,
+ * истёкшие записи и превышение размера чистятся по таймеру
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class UserDetailsCache {
+
+    private static final int MAX_ENTRIES = 10_000;
+
+    private final CustomUserDetailsService userDetailsService;
+
+    @Value("${security.user-cache.ttl:PT5M}")
+    private Duration ttl;
+
+    private final Map<String, CachedUser> users = new ConcurrentHashMap<>();
+
+    /**
+     * Пользователь для уже проверенного токена: из кэша или из БД
+     */
+    public UserDetails get(String username, String tokenId) {
+        String cacheKey = username + ":" + tokenId;
+        long now = System.currentTimeMillis();
+
+        CachedUser cached = users.get(cacheKey);
+        if (cached != null && cached.expiresAt > now) {
+            return cached.details;
+        }
+
+        // compute держит только ключ: параллельные запросы с тем же токеном ждут одну загрузку
+        return users.compute(cacheKey, (key, current) ->
+                current != null && current.expiresAt > now
+                        ? current
+                        : new CachedUser(userDetailsService.loadUserByUsername(username), now + ttl.toMillis())
+        ).details;
+    }
+
+    /**
+     * Удаляет истёкшие записи; если кэш всё ещё больше MAX_ENTRIES — самые старые
+     */
+    @Scheduled(fixedDelayString = "${security.user-cache.cleanup-interval:PT1M}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        users.values().removeIf(cached -> cached.expiresAt <= now);
+
+        int excess = users.size() - MAX_ENTRIES;
+        if (excess > 0) {
+            users.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().expiresAt))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(users::remove);
+        }
+    }
+
+    /**
+     * Сбрасывает все закэшированные токены пользователя (удаление, смена ролей)
+     */
+    public void invalidate(Integer userId) {
+        int before = users.size();
+        users.values().removeIf(cached -> cached.details instanceof CustomUserDetails custom
+                && userId.equals(custom.getUser().getUserId()));
+        int removed = Math.max(0, before - users.size());
+        log.debug("Сброшено {} записей кэша пользователя userId={}", removed, userId);
+    }
+
+    private static final class CachedUser {
+        private final UserDetails details;
+        private final long expiresAt;
+
+        private CachedUser(UserDetails details, long expiresAt) {
+            this.details = details;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import java.util.List;
 @RequiredArgsConstructor
 public class UserService {
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
 
     public User findByUsername(String username) {
         return userRepository.findByUsername(username)
@@ -23,6 +24,8 @@ public class UserService {
 
     public String deleteById(Integer userId) {
         userRepository.deleteById(userId);
+        // Иначе удалённый пользователь проходил бы аутентификацию до истечения кэша
+        userDetailsCache.invalidate(userId);
         return "Успешное удаление";
     }
 
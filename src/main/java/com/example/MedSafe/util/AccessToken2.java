@@ -1,5 +1,8 @@
 package com.example.MedSafe.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
 import java.util.TreeMap;
 import javax.crypto.Mac;
@@ -57,6 +60,18 @@ public class AccessToken2 {
     }
 
     private static final String VERSION = "007";
+    private static final String HMAC_SHA256 = "HmacSHA256";
+
+    // Mac и буферы упаковки — свои у каждого потока, build() их только переинициализирует
+    private static final ThreadLocal<Mac> HMAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC_SHA256);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+    private static final ThreadLocal<ByteBuf> BODY_BUFFERS = ThreadLocal.withInitial(ByteBuf::new);
+    private static final ThreadLocal<ByteBuf> CONTENT_BUFFERS = ThreadLocal.withInitial(ByteBuf::new);
     public static final short SERVICE_TYPE_RTC = 1;
     public static final short SERVICE_TYPE_RTM = 2;
     public static final short SERVICE_TYPE_FPA = 4;
@@ -89,20 +104,22 @@ public class AccessToken2 {
             return "";
         }
 
-        ByteBuf buf = new ByteBuf().put(this.appId).put(this.issueTs).put(this.expire).put(this.salt).put((short) this.services.size());
+        ByteBuf buf = BODY_BUFFERS.get().reset()
+                .put(this.appId).put(this.issueTs).put(this.expire).put(this.salt).put((short) this.services.size());
         byte[] signing = getSign();
 
         this.services.forEach((k, v) -> {
             v.pack(buf);
         });
+        byte[] body = buf.asBytes();
 
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(signing, "HmacSHA256"));
-        byte[] signature = mac.doFinal(buf.asBytes());
+        Mac mac = HMAC.get();
+        mac.init(new SecretKeySpec(signing, HMAC_SHA256));
+        byte[] signature = mac.doFinal(body);
 
-        ByteBuf bufferContent = new ByteBuf();
+        ByteBuf bufferContent = CONTENT_BUFFERS.get().reset();
         bufferContent.put(signature);
-        bufferContent.buffer.put(buf.asBytes());
+        bufferContent.buffer.put(body);
 
         return getVersion() + Utils.base64Encode(Utils.compress(bufferContent.asBytes()));
     }
@@ -127,13 +144,18 @@ public class AccessToken2 {
     }
 
     public byte[] getSign() throws Exception {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(new ByteBuf().put(this.issueTs).asBytes(), "HmacSHA256"));
+        Mac mac = HMAC.get();
+        mac.init(new SecretKeySpec(packInt(this.issueTs), HMAC_SHA256));
         byte[] signing = mac.doFinal(this.appCert.getBytes());
-        mac.init(new SecretKeySpec(new ByteBuf().put(this.salt).asBytes(), "HmacSHA256"));
+        mac.init(new SecretKeySpec(packInt(this.salt), HMAC_SHA256));
         return mac.doFinal(signing);
     }
 
+    // packUint32 без буфера на 1 КБ
+    private static byte[] packInt(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
     public static String getUidStr(int uid) {
         if (uid == 0) {
             return "";
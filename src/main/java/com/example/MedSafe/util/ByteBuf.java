@@ -18,6 +18,12 @@ public class ByteBuf {
         this.buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
     }
 
+    // Очистка для повторного использования того же буфера
+    public ByteBuf reset() {
+        buffer.clear();
+        return this;
+    }
+
     public byte[] asBytes() {
         byte[] out = new byte[buffer.position()];
         buffer.rewind();
@@ -0,0 +1,117 @@
+package com.example.MedSafe.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.regex.Pattern;
+
+/**
+ * Бинарный формат зашифрованного диагноза (колонка diagnoses.ciphertext) и его текстовое представление для API.
+ * <pre>
+ * v1: [0x01][IV 12][RSA-зашифрованный AES-ключ][Encrypted Data]   текст: Base64 без байта версии
+ * v2: [0x02][dataKeyId int32][IV 12][Encrypted Data]              текст: "v2:&lt;dataKeyId&gt;:" + Base64([IV][Encrypted Data])
+ * </pre>
+ */
+public final class CiphertextFormat {
+
+    public static final byte VERSION_HYBRID = 1;
+    public static final byte VERSION_ENVELOPE = 2;
+
+    public static final int HYBRID_HEADER_LENGTH = 1;
+    public static final int ENVELOPE_HEADER_LENGTH = 1 + Integer.BYTES;
+
+    private static final String ENVELOPE_TEXT_PREFIX = "v2:";
+    private static final Pattern BASE64 = Pattern.compile("^[A-Za-z0-9+/]+={0,2}$");
+
+    // IV + RSA-2048 ключ + тег GCM: всё, что короче, — не шифротекст v1
+    private static final int MIN_HYBRID_BYTES = 12 + 256 + 16;
+
+    private CiphertextFormat() {
+    }
+
+    public static byte[] envelope(int dataKeyId, byte[] ivAndData) {
+        return ByteBuffer.allocate(ENVELOPE_HEADER_LENGTH + ivAndData.length)
+                .put(VERSION_ENVELOPE)
+                .putInt(dataKeyId)
+                .put(ivAndData)
+                .array();
+    }
+
+    public static int version(byte[] ciphertext) {
+        if (ciphertext == null || ciphertext.length == 0) {
+            throw new IllegalArgumentException("Empty ciphertext");
+        }
+        return ciphertext[0];
+    }
+
+    public static int dataKeyId(byte[] ciphertext) {
+        if (version(ciphertext) != VERSION_ENVELOPE || ciphertext.length < ENVELOPE_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Not an envelope ciphertext");
+        }
+        return ByteBuffer.wrap(ciphertext, 1, Integer.BYTES).getInt();
+    }
+
+    /**
+     * AAD для AES-GCM в формате v2 — одинаковый для бинарного и текстового хранения,
+     * поэтому перевод между ними не требует перешифровки
+     */
+    public static byte[] envelopeAad(int dataKeyId) {
+        return (ENVELOPE_TEXT_PREFIX + dataKeyId + ":").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Текстовое (Base64) представление для клиентов
+     */
+    public static String toText(byte[] ciphertext) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        switch (version(ciphertext)) {
+            case VERSION_HYBRID:
+                return encoder.encodeToString(Arrays.copyOfRange(ciphertext, HYBRID_HEADER_LENGTH, ciphertext.length));
+            case VERSION_ENVELOPE:
+                return ENVELOPE_TEXT_PREFIX + dataKeyId(ciphertext) + ":"
+                        + encoder.encodeToString(Arrays.copyOfRange(ciphertext, ENVELOPE_HEADER_LENGTH, ciphertext.length));
+            default:
+                throw new IllegalArgumentException("Unknown ciphertext version " + ciphertext[0]);
+        }
+    }
+
+    /**
+     * Разбирает текстовое представление. Возвращает null, если строка не похожа на шифротекст
+     * (например, незашифрованный диагноз от бота)
+     */
+    public static byte[] fromText(String text) {
+        if (text == null) {
+            return null;
+        }
+        if (text.startsWith(ENVELOPE_TEXT_PREFIX)) {
+            int separator = text.indexOf(':', ENVELOPE_TEXT_PREFIX.length());
+            if (separator < 0) {
+                return null;
+            }
+            try {
+                int dataKeyId = Integer.parseInt(text.substring(ENVELOPE_TEXT_PREFIX.length(), separator));
+                return envelope(dataKeyId, Base64.getDecoder().decode(text.substring(separator + 1)));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        if (!BASE64.matcher(text).matches()) {
+            return null;
+        }
+        byte[] decoded;
+        try {
+            decoded = Base64.getDecoder().decode(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (decoded.length < MIN_HYBRID_BYTES) {
+            return null;
+        }
+        byte[] result = new byte[HYBRID_HEADER_LENGTH + decoded.length];
+        result[0] = VERSION_HYBRID;
+        System.arraycopy(decoded, 0, result, HYBRID_HEADER_LENGTH, decoded.length);
+        return result;
+    }
+}
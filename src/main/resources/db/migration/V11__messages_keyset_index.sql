@@ -0,0 +1,5 @@
+-- Индекс для keyset-пагинации истории чата: (chat_id, created_at, message_id)
+CREATE INDEX idx_messages_chat_created_id ON messages(chat_id, created_at, message_id);
+
+-- Префикс нового индекса, отдельный индекс по chat_id больше не нужен
+DROP INDEX IF EXISTS idx_messages_chat_id;
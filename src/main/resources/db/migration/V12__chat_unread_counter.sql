@@ -0,0 +1,13 @@
+-- Денормализованный счётчик непрочитанных сообщений участника чата
+ALTER TABLE chat_participants ADD COLUMN unread_count INTEGER NOT NULL DEFAULT 0;
+
+-- Заполняем по существующим сообщениям
+UPDATE chat_participants cp
+SET unread_count = (
+    SELECT COUNT(*)
+    FROM messages m
+    WHERE m.chat_id = cp.chat_id
+      AND m.sender_id <> cp.user_id
+      AND m.created_at > COALESCE(cp.last_read_at, '1970-01-01'::timestamp)
+      AND m.is_deleted = FALSE
+);
@@ -0,0 +1,2 @@
+-- Контрольная сумма (SHA-256) вложений, считается при загрузке
+ALTER TABLE message_attachments ADD COLUMN checksum VARCHAR(64);
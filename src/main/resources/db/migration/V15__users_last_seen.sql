@@ -0,0 +1,4 @@
+-- Время последней активности; online теперь пишется пачками из PresenceService
+ALTER TABLE users ADD COLUMN IF NOT EXISTS last_seen TIMESTAMP;
+
+UPDATE users SET online = false WHERE online IS NULL;
@@ -0,0 +1,11 @@
+-- Ключи шифрования данных пациента (envelope encryption): AES-ключ, завёрнутый RSA-ключом пользователя.
+-- Диагнозы формата v2 ссылаются на data_key_id, RSA нужен один раз на ключ, а не на каждую запись
+CREATE TABLE patient_data_keys (
+    data_key_id SERIAL PRIMARY KEY,
+    user_id INT NOT NULL REFERENCES users(user_id) ON DELETE CASCADE,
+    wrapped_key TEXT NOT NULL,
+    public_key_sha256 VARCHAR(64) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_patient_data_keys_user ON patient_data_keys(user_id, data_key_id DESC);
@@ -0,0 +1,24 @@
+-- Зашифрованные диагнозы хранятся в bytea: [версия][id ключа данных (только v2)][IV][данные]
+ALTER TABLE diagnoses ADD COLUMN ciphertext BYTEA;
+ALTER TABLE diagnoses ALTER COLUMN diagnosis DROP NOT NULL;
+
+-- Переносим существующие шифротексты одним UPDATE: миграция и так идёт в одной транзакции под
+-- блокировкой ALTER TABLE, пачки внутри неё ничего не дают, а каждый проход заново сканировал бы таблицу.
+-- Незашифрованные диагнозы (не Base64 или слишком короткие для v1) остаются в текстовой колонке
+UPDATE diagnoses d
+SET ciphertext = CASE
+        WHEN d.diagnosis LIKE 'v2:%' THEN
+            '\x02'::bytea
+                || int4send(split_part(d.diagnosis, ':', 2)::int)
+                || decode(split_part(d.diagnosis, ':', 3), 'base64')
+        ELSE '\x01'::bytea || decode(d.diagnosis, 'base64')
+    END,
+    diagnosis = NULL
+WHERE (d.diagnosis ~ '^v2:[0-9]+:[A-Za-z0-9+/]+={0,2}$'
+        AND length(split_part(d.diagnosis, ':', 3)) % 4 = 0)
+   OR (d.diagnosis ~ '^[A-Za-z0-9+/]+={0,2}$'
+        AND length(d.diagnosis) % 4 = 0
+        AND length(d.diagnosis) >= 380);
+
+ALTER TABLE diagnoses ADD CONSTRAINT diagnoses_content_present
+    CHECK (diagnosis IS NOT NULL OR ciphertext IS NOT NULL);
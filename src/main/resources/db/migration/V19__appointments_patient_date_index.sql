@@ -0,0 +1,3 @@
+-- Последний приём пациента до даты диагноза (статистика дашборда) — поиск по индексу вместо скана
+CREATE INDEX IF NOT EXISTS idx_appointments_patient_date
+    ON appointments (patient_id, appointment_date DESC);
@@ -0,0 +1,19 @@
+-- Почасовые и подневные агрегаты для графиков: приёмы по статусам, диагнозы, анализы, выручка по валютам.
+-- doctor_id = 0 — метрика без привязки к врачу, dimension = '' — без разреза
+CREATE TABLE metric_rollups (
+    rollup_id BIGSERIAL PRIMARY KEY,
+    granularity VARCHAR(8) NOT NULL CHECK (granularity IN ('HOUR', 'DAY')),
+    metric VARCHAR(32) NOT NULL,
+    bucket_start TIMESTAMP NOT NULL,
+    doctor_id INT NOT NULL DEFAULT 0,
+    dimension VARCHAR(50) NOT NULL DEFAULT '',
+    event_count BIGINT NOT NULL DEFAULT 0,
+    amount NUMERIC(14, 2) NOT NULL DEFAULT 0,
+    CONSTRAINT uk_metric_rollups_bucket UNIQUE (granularity, metric, bucket_start, doctor_id, dimension)
+);
+
+-- Пересчёт окна идёт по времени события — без индексов это полные сканы исходных таблиц
+CREATE INDEX IF NOT EXISTS idx_appointments_date ON appointments (appointment_date);
+CREATE INDEX IF NOT EXISTS idx_diagnoses_created_at ON diagnoses (created_at);
+CREATE INDEX IF NOT EXISTS idx_tests_created_at ON tests (created_at);
+CREATE INDEX IF NOT EXISTS idx_payments_paid_at ON payments (paid_at) WHERE status = 'paid';
@@ -0,0 +1,3 @@
+-- Проверка занятости врача: doctor_id = ? AND appointment_date >= ? AND appointment_date < ?
+CREATE INDEX IF NOT EXISTS idx_appointments_doctor_date
+    ON appointments (doctor_id, appointment_date);
@@ -0,0 +1,5 @@
+-- Часы приёма врача и длина слота; NULL — значения по умолчанию из appointments.slots.*
+ALTER TABLE doctors
+    ADD COLUMN IF NOT EXISTS work_start TIME,
+    ADD COLUMN IF NOT EXISTS work_end TIME,
+    ADD COLUMN IF NOT EXISTS slot_minutes INT CHECK (slot_minutes > 0);
@@ -0,0 +1,28 @@
+-- Один активный приём на (врач, время начала): двойную запись отсекает сама БД.
+-- Уже существующие двойные записи миграция не трогает — это медицинские данные, решение за людьми.
+-- Если такие есть, миграция падает со списком конфликтующих записей; после их ручного разбора
+-- (перенос или отмена) миграцию можно запустить повторно
+DO $$
+DECLARE
+    conflicts TEXT;
+BEGIN
+    SELECT string_agg(format('doctor_id=%s at %s: appointment_ids=%s',
+                             doctor_id, appointment_date, ids), E'\n')
+    INTO conflicts
+    FROM (SELECT doctor_id, appointment_date,
+                 string_agg(appointment_id::TEXT, ',' ORDER BY appointment_id) AS ids
+          FROM appointments
+          WHERE LOWER(status) <> 'cancelled'
+          GROUP BY doctor_id, appointment_date
+          HAVING COUNT(*) > 1) duplicates;
+
+    IF conflicts IS NOT NULL THEN
+        RAISE EXCEPTION 'Cannot create uk_appointments_doctor_slot: active double bookings found'
+            USING DETAIL = conflicts,
+                  HINT = 'Reschedule or cancel the conflicting appointments, then rerun the migration';
+    END IF;
+END $$;
+
+CREATE UNIQUE INDEX IF NOT EXISTS uk_appointments_doctor_slot
+    ON appointments (doctor_id, appointment_date)
+    WHERE LOWER(status) <> 'cancelled';
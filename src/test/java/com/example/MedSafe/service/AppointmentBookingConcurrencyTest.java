@@ -0,0 +1,151 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.model.Appointment;
+import com.example.MedSafe.model.Doctor;
+import com.example.MedSafe.model.Patient;
+import com.example.MedSafe.model.dto.AppointmentRequestDTO;
+import com.example.MedSafe.repository.AppointmentRepository;
+import com.example.MedSafe.repository.DoctorRepository;
+import com.example.MedSafe.repository.PatientRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Стресс-тест записи: тысячи одновременных create на несколько врачей и слотов.
+ * Репозиторий — in-memory заглушка без уникального индекса, так что от двойной записи
+ * защищают только BookingLocks и проверка-затем-вставка в AppointmentService.book
+ */
+class AppointmentBookingConcurrencyTest {
+
+    private static final int DOCTORS = 4;
+    private static final int SLOTS_PER_DOCTOR = 5;
+    private static final int REQUESTS_PER_SLOT = 250;
+    private static final int SLOT_MINUTES = 30;
+    private static final LocalDateTime FIRST_SLOT = LocalDateTime.now().plusDays(1).withHour(9)
+            .withMinute(0).withSecond(0).withNano(0);
+
+    // Сохранённые записи: имитация таблицы appointments
+    private final Queue<Appointment> saved = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ids = new AtomicInteger();
+
+    private AppointmentService appointmentService;
+
+    @BeforeEach
+    void setUp() {
+        AppointmentRepository appointmentRepository = mock(AppointmentRepository.class);
+        PatientRepository patientRepository = mock(PatientRepository.class);
+        DoctorRepository doctorRepository = mock(DoctorRepository.class);
+        SlotAvailabilityService slotAvailabilityService = mock(SlotAvailabilityService.class);
+
+        Patient patient = new Patient();
+        patient.setPatientId(1);
+        when(patientRepository.findById(anyInt())).thenReturn(Optional.of(patient));
+        when(doctorRepository.findById(anyInt())).thenAnswer(invocation -> {
+            Doctor doctor = new Doctor();
+            doctor.setDoctorId(invocation.getArgument(0));
+            return Optional.of(doctor);
+        });
+        when(slotAvailabilityService.requireBookableSlot(any(), any())).thenReturn(SLOT_MINUTES);
+
+        when(appointmentRepository.existsActiveByDoctorIdInRange(anyInt(), any(), any(), anyString()))
+                .thenAnswer(invocation -> {
+                    Integer doctorId = invocation.getArgument(0);
+                    LocalDateTime from = invocation.getArgument(1);
+                    LocalDateTime to = invocation.getArgument(2);
+                    return saved.stream().anyMatch(a -> a.getDoctor().getDoctorId().equals(doctorId)
+                            && !a.getAppointmentDate().isBefore(from)
+                            && a.getAppointmentDate().isBefore(to));
+                });
+        when(appointmentRepository.saveAndFlush(any(Appointment.class))).thenAnswer(invocation -> {
+            Appointment appointment = invocation.getArgument(0);
+            // Расширяем окно гонки между проверкой и вставкой
+            Thread.yield();
+            appointment.setAppointmentId(ids.incrementAndGet());
+            saved.add(appointment);
+            return appointment;
+        });
+
+        BookingLocks bookingLocks = new BookingLocks();
+        ReflectionTestUtils.setField(bookingLocks, "stripeCount", 64);
+        ReflectionTestUtils.setField(bookingLocks, "lockTimeout", Duration.ofSeconds(30));
+        bookingLocks.init();
+
+        appointmentService = new AppointmentService(appointmentRepository, patientRepository, doctorRepository,
+                slotAvailabilityService, bookingLocks);
+        ReflectionTestUtils.setField(appointmentService, "bookingMaxAttempts", 3);
+    }
+
+    @Test
+    void concurrentBookingsGetExactlyOneWinnerPerSlot() throws Exception {
+        List<AppointmentRequestDTO> requests = new ArrayList<>();
+        for (int doctorId = 1; doctorId <= DOCTORS; doctorId++) {
+            for (int slot = 0; slot < SLOTS_PER_DOCTOR; slot++) {
+                for (int i = 0; i < REQUESTS_PER_SLOT; i++) {
+                    AppointmentRequestDTO request = new AppointmentRequestDTO();
+                    request.setDoctorId(doctorId);
+                    request.setPatientId(1);
+                    request.setAppointmentDate(FIRST_SLOT.plusMinutes((long) slot * SLOT_MINUTES));
+                    requests.add(request);
+                }
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (AppointmentRequestDTO request : requests) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                try {
+                    appointmentService.create(request);
+                } catch (IllegalStateException e) {
+                    conflicts.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Любое другое исключение провалит тест здесь
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        Map<String, Integer> winnersPerSlot = new ConcurrentHashMap<>();
+        for (Appointment appointment : saved) {
+            winnersPerSlot.merge(appointment.getDoctor().getDoctorId() + "@" + appointment.getAppointmentDate(), 1,
+                    Integer::sum);
+        }
+        int slots = DOCTORS * SLOTS_PER_DOCTOR;
+        assertEquals(slots, winnersPerSlot.size());
+        winnersPerSlot.forEach((slot, winners) -> assertEquals(1, winners, "double booking at " + slot));
+        assertEquals(requests.size() - slots, conflicts.get());
+    }
+}
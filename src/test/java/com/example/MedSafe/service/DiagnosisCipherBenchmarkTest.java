@@ -0,0 +1,132 @@
+package com.example.MedSafe.service;
+
+import com.example.MedSafe.repository.DiagnosisRepository;
+import com.example.MedSafe.repository.MedicalRecordRepository;
+import com.example.MedSafe.repository.PatientRepository;
+import com.example.MedSafe.repository.SecurityKeyRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Замер расшифровки диагноза (формат v1) только на CPU, без БД: старый путь — разбор ключа
+ * и новые Cipher на каждый вызов, новый — DiagnosisService с RsaKeyCache и Cipher на поток.
+ * JMH в сборке нет, поэтому это JUnit-замер: проверяет результат и пишет время в лог, без порогов
+ */
+class DiagnosisCipherBenchmarkTest {
+    private static final Logger logger = LoggerFactory.getLogger(DiagnosisCipherBenchmarkTest.class);
+
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 500;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
+    private static final int RSA_KEY_LENGTH = 256;
+    private static final String PLAIN_TEXT = "Диагноз: J06.9 острая инфекция верхних дыхательных путей";
+
+    private DiagnosisService diagnosisService;
+    private String privateKeyBase64;
+    private String ciphertextBase64;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        diagnosisService = new DiagnosisService(
+                mock(DiagnosisRepository.class),
+                mock(PatientRepository.class),
+                mock(MedicalRecordRepository.class),
+                mock(SecurityKeyRepository.class),
+                new RsaKeyCache(),
+                mock(DataKeyService.class));
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        privateKeyBase64 = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+
+        // v1 в текстовом виде: Base64([IV][RSA-зашифрованный AES-ключ][Encrypted Data])
+        KeyGenerator aesGenerator = KeyGenerator.getInstance("AES");
+        aesGenerator.init(256);
+        SecretKey aesKey = aesGenerator.generateKey();
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        new SecureRandom().nextBytes(iv);
+
+        Cipher rsaCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+        rsaCipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+        byte[] encryptedKey = rsaCipher.doFinal(aesKey.getEncoded());
+
+        Cipher aesCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        aesCipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        byte[] encryptedData = aesCipher.doFinal(PLAIN_TEXT.getBytes(StandardCharsets.UTF_8));
+
+        ciphertextBase64 = Base64.getEncoder().encodeToString(ByteBuffer
+                .allocate(iv.length + encryptedKey.length + encryptedData.length)
+                .put(iv).put(encryptedKey).put(encryptedData)
+                .array());
+    }
+
+    @AfterEach
+    void tearDown() {
+        diagnosisService.shutdown();
+    }
+
+    @Test
+    void cachedKeysAndCiphersDecryptLikeBaseline() throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            baselineDecrypt(ciphertextBase64, privateKeyBase64);
+            diagnosisService.decryptDiagnosis(ciphertextBase64, privateKeyBase64);
+        }
+
+        long baselineStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(PLAIN_TEXT, baselineDecrypt(ciphertextBase64, privateKeyBase64));
+        }
+        long baselineNanos = System.nanoTime() - baselineStart;
+
+        long cachedStart = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(PLAIN_TEXT, diagnosisService.decryptDiagnosis(ciphertextBase64, privateKeyBase64));
+        }
+        long cachedNanos = System.nanoTime() - cachedStart;
+
+        logger.info("Расшифровка v1, {} итераций: без кэша {} мкс/оп, DiagnosisService {} мкс/оп",
+                ITERATIONS, baselineNanos / ITERATIONS / 1_000, cachedNanos / ITERATIONS / 1_000);
+    }
+
+    /**
+     * Расшифровка как до кэширования: KeyFactory и Cipher.getInstance на каждый вызов
+     */
+    private static String baselineDecrypt(String ciphertext, String privateKeyStr) throws Exception {
+        byte[] combined = Base64.getDecoder().decode(ciphertext);
+        PrivateKey privateKey = KeyFactory.getInstance("RSA")
+                .generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(privateKeyStr)));
+
+        Cipher rsaCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+        rsaCipher.init(Cipher.DECRYPT_MODE, privateKey);
+        byte[] aesKeyBytes = rsaCipher.doFinal(combined, GCM_IV_LENGTH, RSA_KEY_LENGTH);
+
+        int dataOffset = GCM_IV_LENGTH + RSA_KEY_LENGTH;
+        Cipher aesCipher = Cipher.getInstance("AES/GCM/NoPadding");
+        aesCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKeyBytes, "AES"),
+                new GCMParameterSpec(GCM_TAG_LENGTH, combined, 0, GCM_IV_LENGTH));
+        return new String(aesCipher.doFinal(combined, dataOffset, combined.length - dataOffset), StandardCharsets.UTF_8);
+    }
+}